@@ -0,0 +1,63 @@
+package com.loganalyzer;
+
+// 单个设备的告警状态机，带迟滞和重复提醒间隔，避免 ERROR 占比超标期间每条日志都发布告警
+// CLEARED --(占比 > 触发阈值)--> RAISED --(占比 >= 解除阈值)--> SUSTAINED --(占比 < 解除阈值)--> CLEARED
+public class AlertStateMachine {
+    public enum State {
+        CLEARED, // 正常 / 告警已解除
+        RAISED, // 新触发的告警
+        SUSTAINED // 告警持续中
+    }
+
+    private final double raiseThreshold; // 触发阈值：ERROR 占比超过该值时触发告警
+    private final double clearThreshold; // 解除阈值：ERROR 占比低于该值时解除告警（不高于触发阈值）
+    private final long renotifyIntervalMillis; // 告警持续期间重复提醒的最小间隔
+
+    private State state = State.CLEARED;
+    private long lastNotifyMillis = 0; // 上一次发布告警的时间
+
+    public AlertStateMachine(double raiseThreshold, double clearThreshold, long renotifyIntervalMillis) {
+        this.raiseThreshold = raiseThreshold;
+        this.clearThreshold = Math.min(clearThreshold, raiseThreshold);
+        this.renotifyIntervalMillis = renotifyIntervalMillis;
+    }
+
+    // 根据当前 ERROR 占比推进状态，返回需要发布的告警状态；无需发布时返回 null
+    public State update(double errorPercentage, long nowMillis) {
+        if (state == State.CLEARED) {
+            if (errorPercentage > raiseThreshold) {
+                state = State.RAISED;
+                lastNotifyMillis = nowMillis;
+                return State.RAISED;
+            }
+            return null;
+        }
+
+        if (errorPercentage < clearThreshold) {
+            state = State.CLEARED;
+            lastNotifyMillis = nowMillis;
+            return State.CLEARED;
+        }
+
+        state = State.SUSTAINED;
+        if (nowMillis - lastNotifyMillis >= renotifyIntervalMillis) {
+            lastNotifyMillis = nowMillis;
+            return State.SUSTAINED;
+        }
+        return null;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getLastNotifyMillis() {
+        return lastNotifyMillis;
+    }
+
+    // 从检查点恢复状态，重启后已触发的告警不会再次触发
+    public void restore(State state, long lastNotifyMillis) {
+        this.state = state;
+        this.lastNotifyMillis = lastNotifyMillis;
+    }
+}
@@ -0,0 +1,116 @@
+package com.loganalyzer;
+
+import java.nio.ByteBuffer;
+
+// 单个设备最近 S 秒内日志数量的滑动窗口，用于告警判定
+// 以秒为单位分桶，共 S+1 个桶覆盖 [当前秒-S, 当前秒]；
+// 桶随时间推进被复用并从累计值中扣除，每条日志的更新和判定都是常数时间
+public class AlertWindow {
+    private final int span; // 桶的数量（S+1）
+    private final int[] totals; // 每个桶内的日志条数
+    private final int[] errors; // 每个桶内的 ERROR 日志条数
+    private long latestSecond = Long.MIN_VALUE; // 窗口已推进到的最新一秒
+    private int total = 0; // 窗口内日志总数
+    private int errorTotal = 0; // 窗口内 ERROR 日志总数
+
+    public AlertWindow(int seconds) {
+        this.span = seconds + 1;
+        this.totals = new int[span];
+        this.errors = new int[span];
+    }
+
+    // 记录一条日志；logSecond 为日志时间戳，nowSecond 为当前时间（均为 epoch 秒）
+    public void add(long logSecond, boolean error, long nowSecond) {
+        add(logSecond, error, nowSecond, 1);
+    }
+
+    // 记录一条代表 weight 条日志的抽样日志
+    public void add(long logSecond, boolean error, long nowSecond, int weight) {
+        advance(nowSecond);
+
+        // 早于窗口的日志不参与统计；时间戳超前于当前时间的日志计入最新的桶
+        if (logSecond <= latestSecond - span) {
+            return;
+        }
+        int index = index(Math.min(logSecond, latestSecond));
+        totals[index] += weight;
+        total += weight;
+        if (error) {
+            errors[index] += weight;
+            errorTotal += weight;
+        }
+    }
+
+    // 计算截至 nowSecond 的最近 S 秒内 ERROR 占比
+    public double getErrorPercentage(long nowSecond) {
+        advance(nowSecond);
+        return total > 0 ? (double) errorTotal / total * 100 : 0;
+    }
+
+    // 写入检查点后占用的字节数
+    public int checkpointSize() {
+        return 8 + 4 + (latestSecond == Long.MIN_VALUE ? 0 : span * 8);
+    }
+
+    // 写入检查点：最新一秒 long + 桶数 int + 按时间顺序的各桶（日志条数 int、ERROR 条数 int）
+    public void writeBuckets(ByteBuffer buffer) {
+        buffer.putLong(latestSecond);
+        if (latestSecond == Long.MIN_VALUE) {
+            buffer.putInt(0); // 还没有记录过日志
+            return;
+        }
+        buffer.putInt(span);
+        for (long second = latestSecond - span + 1; second <= latestSecond; second++) {
+            int index = index(second);
+            buffer.putInt(totals[index]);
+            buffer.putInt(errors[index]);
+        }
+    }
+
+    // 从检查点恢复各桶（由新创建的窗口调用）；S 变小时只恢复仍在窗口内的桶，已过期的桶在下次推进时清空
+    public void readBuckets(ByteBuffer buffer) {
+        long savedSecond = buffer.getLong();
+        int count = buffer.getInt();
+        if (count > 0) {
+            advance(savedSecond);
+        }
+        for (int i = 0; i < count; i++) {
+            long second = savedSecond - count + 1 + i;
+            int bucketTotal = buffer.getInt();
+            int bucketErrors = buffer.getInt();
+            if (second > latestSecond - span) {
+                int index = index(second);
+                totals[index] += bucketTotal;
+                errors[index] += bucketErrors;
+                total += bucketTotal;
+                errorTotal += bucketErrors;
+            }
+        }
+    }
+
+    // 将窗口推进到 nowSecond，清空已滑出窗口的桶
+    private void advance(long nowSecond) {
+        if (nowSecond <= latestSecond) {
+            return;
+        }
+        if (latestSecond <= nowSecond - span) {
+            java.util.Arrays.fill(totals, 0);
+            java.util.Arrays.fill(errors, 0);
+            total = 0;
+            errorTotal = 0;
+        } else {
+            for (long second = latestSecond + 1; second <= nowSecond; second++) {
+                int index = index(second);
+                total -= totals[index];
+                errorTotal -= errors[index];
+                totals[index] = 0;
+                errors[index] = 0;
+            }
+        }
+        latestSecond = nowSecond;
+    }
+
+    private int index(long second) {
+        return (int) Math.floorMod(second, (long) span);
+    }
+}
@@ -0,0 +1,441 @@
+package com.loganalyzer;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// 日志、分析结果、告警消息的紧凑二进制编码，通过 BytesMessage 传输
+// 消息带 wire_format=binary 属性；未带该属性的消息按 JSON TextMessage 处理，新旧格式可以同时存在
+//
+// 编码约定：
+//   整数使用 varint（每字节 7 位，高位为延续标志）
+//   时间戳写为 epoch 毫秒 + 1 的 varint；0 表示后面跟随原始字符串（无法按 yyyy-MM-dd HH:mm:ss 解析的时间戳）
+//   时间戳字符串不带时区，固定按 UTC 换算，收发双方的时区不同也能还原出相同的字符串
+//   字符串写为字典编号的 varint；0 表示后面跟随 长度varint + UTF-8 字节
+//   日志级别写为 1 个字节：0 INFO / 1 WARN / 2 ERROR / 3 其他（后面跟随字符串）
+public final class BinaryCodec {
+    public static final String WIRE_FORMAT_PROPERTY = "wire_format"; // 标记消息编码格式的 JMS 属性
+    public static final String WIRE_FORMAT_BINARY = "binary";
+
+    private static final byte VERSION = 4; // 2：分析结果末尾追加高频日志内容；3：追加接收速率；4：追加降级标志；仍可读取旧版本的消息
+
+    // 常见字符串字典，编号从 1 开始；各模块必须保持一致，只能在末尾追加
+    private static final String[] DICTIONARY = {
+            "系统状态正常",
+            "磁盘空间不足",
+            "数据库连接失败",
+            "无",
+            "0000-00-00 00:00:00",
+            "ERROR占比超过50%",
+            "ERROR占比持续超过50%",
+            "ERROR占比已恢复正常",
+            "RAISED",
+            "SUSTAINED",
+            "CLEARED",
+            "full",
+            "delta"
+    };
+    private static final String[] LEVELS = {"INFO", "WARN", "ERROR"};
+    private static final byte LEVEL_OTHER = 3;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    // 最近一次时间戳转换结果（同一秒内的消息直接复用），不可变对象，多线程下替换引用即可
+    private static volatile CachedTimestamp timestampCache = new CachedTimestamp(Long.MIN_VALUE, "");
+
+    private BinaryCodec() {
+    }
+
+    public static boolean isBinary(Message message) throws JMSException {
+        return message instanceof BytesMessage && WIRE_FORMAT_BINARY.equals(message.getStringProperty(WIRE_FORMAT_PROPERTY));
+    }
+
+    // ---------------- LogMessage ----------------
+
+    public static BytesMessage createLogMessage(Session session, LogMessage logMessage) throws JMSException {
+        Buffer buffer = buffer();
+        buffer.writeByte(VERSION);
+        writeLogFields(buffer, logMessage);
+        return toBytesMessage(session, buffer);
+    }
+
+    public static LogMessage readLogMessage(BytesMessage message) throws JMSException {
+        Buffer buffer = readBody(message);
+        checkVersion(buffer);
+        return readLogFields(buffer);
+    }
+
+    // 批量信封：版本号 + 日志条数 varint + 依次排列的日志
+    public static BytesMessage createLogBatch(Session session, List<LogMessage> logMessages) throws JMSException {
+        Buffer buffer = buffer();
+        buffer.writeByte(VERSION);
+        buffer.writeVarLong(logMessages.size());
+        for (LogMessage logMessage : logMessages) {
+            writeLogFields(buffer, logMessage);
+        }
+        return toBytesMessage(session, buffer);
+    }
+
+    // 读取批量信封，解析结果追加到 out
+    public static void readLogBatch(BytesMessage message, List<LogMessage> out) throws JMSException {
+        Buffer buffer = readBody(message);
+        checkVersion(buffer);
+        long count = buffer.readVarLong();
+        for (long i = 0; i < count; i++) {
+            out.add(readLogFields(buffer));
+        }
+    }
+
+    private static void writeLogFields(Buffer buffer, LogMessage logMessage) {
+        buffer.writeVarLong(logMessage.getDevice_id() & 0xFFFFFFFFL);
+        writeTimestamp(buffer, logMessage.getTimestamp());
+        writeLevel(buffer, logMessage.getLog_level());
+        writeString(buffer, logMessage.getMessage());
+    }
+
+    private static LogMessage readLogFields(Buffer buffer) {
+        int deviceId = (int) buffer.readVarLong();
+        String timestamp = readTimestamp(buffer);
+        String logLevel = readLevel(buffer);
+        String content = readString(buffer);
+        return new LogMessage(deviceId, timestamp, logLevel, content);
+    }
+
+    // ---------------- AnalysisResult ----------------
+
+    public static BytesMessage createAnalysisResult(Session session, AnalysisResult result) throws JMSException {
+        Buffer buffer = buffer();
+        buffer.writeByte(VERSION);
+        writeAnalysisFields(buffer, result);
+        return toBytesMessage(session, buffer);
+    }
+
+    public static AnalysisResult readAnalysisResult(BytesMessage message) throws JMSException {
+        Buffer buffer = readBody(message);
+        int version = checkVersion(buffer);
+        return readAnalysisFields(buffer, version);
+    }
+
+    // 分析快照：版本号 + 快照类型字符串 + 结果条数 varint + 依次排列的分析结果
+    public static BytesMessage createAnalysisSnapshot(Session session, String snapshotType, List<AnalysisResult> results) throws JMSException {
+        Buffer buffer = buffer();
+        buffer.writeByte(VERSION);
+        writeString(buffer, snapshotType);
+        buffer.writeVarLong(results.size());
+        for (AnalysisResult result : results) {
+            writeAnalysisFields(buffer, result);
+        }
+        return toBytesMessage(session, buffer);
+    }
+
+    private static void writeAnalysisFields(Buffer buffer, AnalysisResult result) {
+        buffer.writeVarLong(result.getDevice_id() & 0xFFFFFFFFL);
+        buffer.writeVarLong(toHundredths(result.getError_percentage()));
+        buffer.writeVarLong(toHundredths(result.getWarn_percentage()));
+        writeTimestamp(buffer, result.getLast_error_timestamp());
+        writeString(buffer, result.getLast_error_message());
+        writeTimestamp(buffer, result.getAnalysis_timestamp());
+        writeMessageCounts(buffer, result.getTop_messages());
+        buffer.writeVarLong(toHundredths(result.getIngest_rate()));
+        buffer.writeByte((byte) (result.isDegraded() ? 1 : 0));
+    }
+
+    private static AnalysisResult readAnalysisFields(Buffer buffer, int version) {
+        int deviceId = (int) buffer.readVarLong();
+        double errorPercentage = buffer.readVarLong() / 100.0;
+        double warnPercentage = buffer.readVarLong() / 100.0;
+        String lastErrorTimestamp = readTimestamp(buffer);
+        String lastErrorMessage = readString(buffer);
+        String analysisTimestamp = readTimestamp(buffer);
+        List<MessageCount> topMessages = readMessageCounts(buffer, version);
+        double ingestRate = version >= 3 ? buffer.readVarLong() / 100.0 : 0;
+        boolean degraded = version >= 4 && buffer.readByte() != 0;
+        return new AnalysisResult(deviceId, errorPercentage, warnPercentage, lastErrorTimestamp, lastErrorMessage, analysisTimestamp, topMessages, ingestRate, degraded);
+    }
+
+    // ---------------- AlertMessage ----------------
+
+    public static BytesMessage createAlertMessage(Session session, AlertMessage alert) throws JMSException {
+        Buffer buffer = buffer();
+        buffer.writeByte(VERSION);
+        buffer.writeVarLong(alert.getDevice_id() & 0xFFFFFFFFL);
+        writeString(buffer, alert.getAlert_message());
+        writeTimestamp(buffer, alert.getTimestamp());
+        writeString(buffer, alert.getAlert_state());
+        return toBytesMessage(session, buffer);
+    }
+
+    public static AlertMessage readAlertMessage(BytesMessage message) throws JMSException {
+        Buffer buffer = readBody(message);
+        checkVersion(buffer);
+        int deviceId = (int) buffer.readVarLong();
+        String alertMessage = readString(buffer);
+        String timestamp = readTimestamp(buffer);
+        String alertState = readString(buffer);
+        return new AlertMessage(deviceId, timestamp, alertMessage, alertState);
+    }
+
+    // ---------------- 字段编码 ----------------
+
+    // 高频日志内容：条数 varint + 依次排列的（级别、内容、次数 varint）
+    private static void writeMessageCounts(Buffer buffer, List<MessageCount> messageCounts) {
+        if (messageCounts == null) {
+            buffer.writeVarLong(0);
+            return;
+        }
+        buffer.writeVarLong(messageCounts.size());
+        for (MessageCount messageCount : messageCounts) {
+            writeLevel(buffer, messageCount.getLog_level());
+            writeString(buffer, messageCount.getMessage());
+            buffer.writeVarLong(Math.max(0, messageCount.getCount()));
+        }
+    }
+
+    private static List<MessageCount> readMessageCounts(Buffer buffer, int version) {
+        List<MessageCount> messageCounts = new ArrayList<>();
+        if (version < 2) {
+            return messageCounts; // 版本 1 的分析结果没有该字段
+        }
+        long count = buffer.readVarLong();
+        for (long i = 0; i < count; i++) {
+            String logLevel = readLevel(buffer);
+            String message = readString(buffer);
+            messageCounts.add(new MessageCount(logLevel, message, buffer.readVarLong()));
+        }
+        return messageCounts;
+    }
+
+    private static void writeTimestamp(Buffer buffer, String timestamp) {
+        long millis = toEpochMillis(timestamp);
+        if (millis < 0) {
+            buffer.writeVarLong(0);
+            writeInlineString(buffer, timestamp);
+        } else {
+            buffer.writeVarLong(millis + 1);
+        }
+    }
+
+    private static String readTimestamp(Buffer buffer) {
+        long value = buffer.readVarLong();
+        return value == 0 ? readInlineString(buffer) : formatEpochMillis(value - 1);
+    }
+
+    private static void writeLevel(Buffer buffer, String logLevel) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(logLevel)) {
+                buffer.writeByte((byte) i);
+                return;
+            }
+        }
+        buffer.writeByte(LEVEL_OTHER);
+        writeString(buffer, logLevel);
+    }
+
+    private static String readLevel(Buffer buffer) {
+        byte level = buffer.readByte();
+        if (level >= 0 && level < LEVELS.length) {
+            return LEVELS[level];
+        }
+        return readString(buffer);
+    }
+
+    private static void writeString(Buffer buffer, String value) {
+        if (value != null) {
+            for (int i = 0; i < DICTIONARY.length; i++) {
+                if (DICTIONARY[i].equals(value)) {
+                    buffer.writeVarLong(i + 1);
+                    return;
+                }
+            }
+        }
+        buffer.writeVarLong(0);
+        writeInlineString(buffer, value);
+    }
+
+    private static String readString(Buffer buffer) {
+        int id = (int) buffer.readVarLong();
+        if (id == 0) {
+            return readInlineString(buffer);
+        }
+        if (id > DICTIONARY.length) {
+            throw new IllegalArgumentException("Unknown dictionary id: " + id);
+        }
+        return DICTIONARY[id - 1];
+    }
+
+    // 长度写为 varint（null 写为 0，其余为字节数 + 1），随后是 UTF-8 字节
+    private static void writeInlineString(Buffer buffer, String value) {
+        if (value == null) {
+            buffer.writeVarLong(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.writeVarLong(bytes.length + 1L);
+        buffer.writeBytes(bytes);
+    }
+
+    private static String readInlineString(Buffer buffer) {
+        int length = (int) buffer.readVarLong();
+        if (length == 0) {
+            return null;
+        }
+        return buffer.readString(length - 1);
+    }
+
+    private static long toHundredths(double percentage) {
+        return Double.isFinite(percentage) ? Math.max(0, Math.round(percentage * 100)) : 0;
+    }
+
+    // 将 yyyy-MM-dd HH:mm:ss 时间戳转换为 epoch 毫秒；无法解析或不能无损还原时返回 -1
+    private static long toEpochMillis(String timestamp) {
+        if (timestamp == null) {
+            return -1;
+        }
+        CachedTimestamp cached = timestampCache;
+        if (timestamp.equals(cached.text)) {
+            return cached.millis;
+        }
+        try {
+            long millis = LocalDateTime.parse(timestamp, TIMESTAMP_FORMATTER)
+                    .toInstant(ZoneOffset.UTC).toEpochMilli();
+            if (millis < 0 || !timestamp.equals(formatEpochMillis(millis))) {
+                return -1;
+            }
+            return millis;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static String formatEpochMillis(long millis) {
+        CachedTimestamp cached = timestampCache;
+        if (millis == cached.millis) {
+            return cached.text;
+        }
+        String text = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC).format(TIMESTAMP_FORMATTER);
+        timestampCache = new CachedTimestamp(millis, text);
+        return text;
+    }
+
+    // ---------------- 缓冲区 ----------------
+
+    private static Buffer buffer() {
+        Buffer buffer = BUFFER.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    private static BytesMessage toBytesMessage(Session session, Buffer buffer) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(buffer.bytes, 0, buffer.position);
+        message.setStringProperty(WIRE_FORMAT_PROPERTY, WIRE_FORMAT_BINARY);
+        return message;
+    }
+
+    private static Buffer readBody(BytesMessage message) throws JMSException {
+        Buffer buffer = buffer();
+        int length = (int) message.getBodyLength();
+        buffer.ensureCapacity(length);
+        message.readBytes(buffer.bytes, length);
+        buffer.limit = length;
+        return buffer;
+    }
+
+    // 读取并校验版本号，返回消息的版本
+    private static int checkVersion(Buffer buffer) {
+        byte version = buffer.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported binary format version: " + version);
+        }
+        return version;
+    }
+
+    private static final class CachedTimestamp {
+        final long millis;
+        final String text;
+
+        CachedTimestamp(long millis, String text) {
+            this.millis = millis;
+            this.text = text;
+        }
+    }
+
+    // 线程内复用的字节缓冲区，同时用于编码和解码
+    private static final class Buffer {
+        byte[] bytes = new byte[256];
+        int position;
+        int limit;
+
+        void reset() {
+            if (bytes.length > 64 * 1024) {
+                bytes = new byte[256];
+            }
+            position = 0;
+            limit = 0;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (bytes.length < capacity) {
+                bytes = java.util.Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(position + 1);
+            bytes[position++] = value;
+        }
+
+        void writeBytes(byte[] value) {
+            ensureCapacity(position + value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(position + 10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        byte readByte() {
+            if (position >= limit) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+            return bytes[position++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString(int length) {
+            if (length < 0 || position + length > limit) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.loganalyzer;
+
+// 单个设备的全部分析状态，接收线程处理一条日志只需一次查找
+// window、alertWindow、alertState 只由接收线程读写；
+// 发布线程只读取 window 的统计快照、lastError、ingestCount（均为 volatile）以及 topMessages（内部加锁），
+// lastPublished 和接收速率的计算状态只由发布线程访问
+// 设备空闲超时被接收线程淘汰后 evicted 置为 true，发布线程据此将其移出发布列表
+public class DeviceState {
+    private final int deviceId; // 设备ID
+    private final DeviceWindow window; // 最近N条日志的滑动窗口
+    private final AlertWindow alertWindow; // 最近S秒的告警统计窗口
+    private final AlertStateMachine alertState; // 告警状态机
+    private final TopKSketch topMessages; // ERROR/WARN 日志内容的高频项统计
+    private volatile LogMessage lastError; // 最近一次 ERROR 日志
+    private volatile long ingestCount; // 已接收的日志条数（只有接收线程写入）
+    private long lastSeenSecond; // 最近一次收到日志的时间（epoch 秒，只由接收线程访问）
+    private volatile boolean evicted; // 是否已因空闲超时被淘汰
+    private int skippedInfoCount; // 降级模式下自上次抽中以来跳过的 INFO 日志条数（只由接收线程访问）
+    private AnalysisResult lastPublished; // 快照模式下上次发布的分析结果
+    private long rateBaseCount; // 上次计算接收速率时的日志条数
+    private long rateBaseNanos; // 上次计算接收速率的时间（System.nanoTime），0 表示尚未计算
+
+    public DeviceState(int deviceId, DeviceWindow window, AlertWindow alertWindow, AlertStateMachine alertState, TopKSketch topMessages) {
+        this.deviceId = deviceId;
+        this.window = window;
+        this.alertWindow = alertWindow;
+        this.alertState = alertState;
+        this.topMessages = topMessages;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public DeviceWindow getWindow() {
+        return window;
+    }
+
+    public AlertWindow getAlertWindow() {
+        return alertWindow;
+    }
+
+    public AlertStateMachine getAlertState() {
+        return alertState;
+    }
+
+    public TopKSketch getTopMessages() {
+        return topMessages;
+    }
+
+    public LogMessage getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(LogMessage lastError) {
+        this.lastError = lastError;
+    }
+
+    public AnalysisResult getLastPublished() {
+        return lastPublished;
+    }
+
+    public void setLastPublished(AnalysisResult lastPublished) {
+        this.lastPublished = lastPublished;
+    }
+
+    // 记录接收到一条日志（由接收线程调用）
+    public void countIngested() {
+        ingestCount++; // 只有接收线程写入，非原子的自增是安全的
+    }
+
+    public long getIngestCount() {
+        return ingestCount;
+    }
+
+    public long getLastSeenSecond() {
+        return lastSeenSecond;
+    }
+
+    public void setLastSeenSecond(long lastSeenSecond) {
+        this.lastSeenSecond = lastSeenSecond;
+    }
+
+    // 降级模式下的 INFO 抽样：每 interval 条抽中一条，返回该条代表的日志条数，未抽中返回 0
+    public int sampleInfo(int interval) {
+        if (++skippedInfoCount < interval) {
+            return 0;
+        }
+        skippedInfoCount = 0;
+        return interval;
+    }
+
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    public void setEvicted(boolean evicted) {
+        this.evicted = evicted;
+    }
+
+    // 计算自上次调用以来的日志接收速率（条/秒），由发布线程调用；首次调用以设备创建以来的数据计算不可靠，返回 0
+    public double updateIngestRate(long nowNanos) {
+        long count = ingestCount;
+        double rate = rateBaseNanos == 0 || nowNanos <= rateBaseNanos
+                ? 0
+                : (count - rateBaseCount) * 1e9 / (nowNanos - rateBaseNanos);
+        rateBaseCount = count;
+        rateBaseNanos = nowNanos;
+        return rate;
+    }
+}
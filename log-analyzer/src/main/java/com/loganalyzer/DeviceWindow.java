@@ -0,0 +1,120 @@
+package com.loganalyzer;
+
+import java.nio.ByteBuffer;
+
+// 单个设备最近 N 条日志的滑动窗口
+// 只保存日志级别编码（byte），不保存完整的 LogMessage 对象；
+// ERROR/WARN/总数计数在日志进入、离开窗口时增量更新，统计占比为 O(1)
+// 窗口只由一个线程写入；其他线程通过 getStatsSnapshot() 读取打包在一个 volatile long 中的一致统计值
+public class DeviceWindow {
+    public static final byte LEVEL_INFO = 0;
+    public static final byte LEVEL_WARN = 1;
+    public static final byte LEVEL_ERROR = 2;
+
+    private static final int COUNT_BITS = 21; // 快照中每个计数占用的位数，窗口容量不能超过 2^21 - 1
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final byte[] levels; // 日志级别环形缓冲区
+    private int head = 0; // 下一条日志写入的位置（窗口满时即最早一条日志的位置）
+    private int size = 0; // 当前窗口内的日志条数
+    private int errorCount = 0; // 窗口内 ERROR 日志条数
+    private int warnCount = 0; // 窗口内 WARN 日志条数
+    private volatile long stats = 0; // 统计快照：窗口大小 | ERROR 数 | WARN 数
+
+    public DeviceWindow(int capacity) {
+        if (capacity <= 0 || capacity > COUNT_MASK) {
+            throw new IllegalArgumentException("Window capacity out of range: " + capacity);
+        }
+        this.levels = new byte[capacity];
+    }
+
+    // 将日志级别字符串转换为级别编码
+    public static byte levelCode(String logLevel) {
+        switch (logLevel) {
+            case "ERROR":
+                return LEVEL_ERROR;
+            case "WARN":
+                return LEVEL_WARN;
+            default:
+                return LEVEL_INFO;
+        }
+    }
+
+    // 添加一条日志，窗口已满时覆盖最早的一条
+    public void add(byte level) {
+        if (size == levels.length) {
+            count(levels[head], -1); // 最早的日志离开窗口
+        } else {
+            size++;
+        }
+        levels[head] = level;
+        count(level, 1);
+        head = head + 1 == levels.length ? 0 : head + 1;
+        stats = ((long) size << (2 * COUNT_BITS)) | ((long) errorCount << COUNT_BITS) | warnCount;
+    }
+
+    // 添加一条代表 weight 条日志的抽样日志（降级模式下的 INFO 抽样），等价于连续添加 weight 次
+    public void add(byte level, int weight) {
+        for (int i = 0; i < weight; i++) {
+            add(level);
+        }
+    }
+
+    // 按从早到晚的顺序写出窗口内的日志级别：条数(int) + 级别编码，用于保存检查点（由接收线程调用）
+    public void writeLevels(ByteBuffer buffer) {
+        buffer.putInt(size);
+        if (size < levels.length) {
+            buffer.put(levels, 0, size);
+        } else {
+            buffer.put(levels, head, levels.length - head);
+            buffer.put(levels, 0, head);
+        }
+    }
+
+    private void count(byte level, int delta) {
+        if (level == LEVEL_ERROR) {
+            errorCount += delta;
+        } else if (level == LEVEL_WARN) {
+            warnCount += delta;
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public int getWarnCount() {
+        return warnCount;
+    }
+
+    public double getErrorPercentage() {
+        return size > 0 ? (double) errorCount / size * 100 : 0;
+    }
+
+    public double getWarnPercentage() {
+        return size > 0 ? (double) warnCount / size * 100 : 0;
+    }
+
+    // 获取统计快照，可在其他线程调用
+    public long getStatsSnapshot() {
+        return stats;
+    }
+
+    public static int snapshotSize(long snapshot) {
+        return (int) (snapshot >>> (2 * COUNT_BITS));
+    }
+
+    public static double snapshotErrorPercentage(long snapshot) {
+        int size = snapshotSize(snapshot);
+        return size > 0 ? (double) ((snapshot >>> COUNT_BITS) & COUNT_MASK) / size * 100 : 0;
+    }
+
+    public static double snapshotWarnPercentage(long snapshot) {
+        int size = snapshotSize(snapshot);
+        return size > 0 ? (double) (snapshot & COUNT_MASK) / size * 100 : 0;
+    }
+}
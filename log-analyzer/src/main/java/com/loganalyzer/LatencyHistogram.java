@@ -0,0 +1,122 @@
+package com.loganalyzer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 固定内存的对数-线性直方图（HDR 风格），用于统计延迟等非负整数值（单位由调用方决定，通常为微秒）
+// 小于 32 的值每个值一个桶；更大的值按最高有效位分段，每段再均分为 16 个子桶，相对误差不超过 1/16
+// 覆盖整个 long 范围共 976 个桶（约 8KB）；记录为无锁的原子自增，可在任意线程记录和查询
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5; // 线性区间的位数：小于 2^5 的值精确记录
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF + SUB_BUCKET_COUNT;
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9}; // summary() 输出的分位数
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray totals = new AtomicLongArray(3); // 0：记录次数，1：数值总和，2：最大值
+
+    // 记录一个值，负值按 0 计
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    // 记录 count 次同一个值（例如一个批量信封中的全部日志）
+    public void record(long value, long count) {
+        if (count <= 0) {
+            return;
+        }
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.addAndGet(bucketIndex(value), count);
+        totals.addAndGet(0, count);
+        totals.addAndGet(1, value * count);
+        long max;
+        while (value > (max = totals.get(2)) && !totals.compareAndSet(2, max, value)) {
+            // 其他线程同时更新了最大值，重试
+        }
+    }
+
+    // 清空全部记录（例如压测中每一档负载开始时）；与同时进行的 record 之间不保证原子性
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        for (int i = 0; i < totals.length(); i++) {
+            totals.set(i, 0);
+        }
+    }
+
+    public long getCount() {
+        return totals.get(0);
+    }
+
+    public long getSum() {
+        return totals.get(1);
+    }
+
+    public long getMax() {
+        return totals.get(2);
+    }
+
+    public double getMean() {
+        long count = totals.get(0);
+        return count > 0 ? (double) totals.get(1) / count : 0;
+    }
+
+    // 返回第 percentile 百分位的值（所在桶的上界），没有记录时返回 0
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // 汇总：count、mean、max 以及 p50/p90/p99/p99.9
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", getCount());
+        summary.put("mean", Math.round(getMean()));
+        for (double percentile : REPORTED_PERCENTILES) {
+            String name = percentile == Math.rint(percentile)
+                    ? "p" + (long) percentile
+                    : "p" + String.valueOf(percentile).replace(".", "");
+            summary.put(name, getPercentile(percentile));
+        }
+        summary.put("max", getMax());
+        return summary;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -1,16 +1,28 @@
 package com.loganalyzer;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import jakarta.jms.*;
+import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class LogAnalyzer {
     private static final String BROKER_URL = "tcp://localhost:61616"; // ActiveMQ 服务器地址
@@ -20,209 +32,809 @@ public class LogAnalyzer {
 
     private static final int N = 100; // 最近N条日志
     private static final int T = 5; // 每隔T秒发布分析结果
+    private static final int PUBLISH_SLOTS = 10; // 每个发布周期划分的时间片数，设备分散到各时间片发布，避免集中突发；1 表示集中发布
     private static final int S = 10; // 在S秒内ERROR占比超过50%
+    private static final int TOP_K = 3; // 分析结果中发布的高频 ERROR/WARN 日志内容条数
+    private static final int TOP_K_CAPACITY = 16; // 每个设备最多跟踪的不同日志内容数（固定内存，需大于 TOP_K）
+    private static final double ALERT_RAISE_THRESHOLD = 50; // ERROR占比超过该值时触发告警
+    private static final double ALERT_CLEAR_THRESHOLD = 40; // 告警触发后ERROR占比低于该值才解除（迟滞）
+    private static final long ALERT_RENOTIFY_INTERVAL_MS = 60_000; // 告警持续期间重复提醒的最小间隔
+    private static final int DEVICE_TTL_SECONDS = 300; // 设备超过该时间没有新日志即淘汰其分析状态，不再发布（需大于 S）
+    private static final String CHECKPOINT_DIR = "checkpoint"; // 设备状态检查点文件所在目录，每个工作线程一个文件
+    private static final int CHECKPOINT_INTERVAL_SECONDS = 30; // 每隔多少秒保存一次检查点，0 表示不保存也不恢复
+    private static final int ACK_BATCH_SIZE = 1; // 事务模式下每处理多少条消息提交一次（K），1 表示逐条自动确认
+    private static final int ACK_INTERVAL_MS = 100; // 事务模式下未提交的消息最多等待的毫秒数（M）
+    private static final int PREFETCH_SIZE = 1000; // broker 预先推送给每个消费者的最大消息数（ActiveMQ 默认 1000）
+    private static final long SHED_ENTER_LAG_MS = 5000; // 日志到达延迟（平滑后）超过该值时进入降级模式，对 INFO 日志抽样处理
+    private static final long SHED_EXIT_LAG_MS = 1000; // 降级模式下延迟回落到该值以下时恢复全量处理
+    private static final int INFO_SAMPLE_INTERVAL = 10; // 降级模式下每多少条 INFO 日志处理一条（按该权重计入统计），1 表示不降级
+    private static final double LAG_SMOOTHING = 0.05; // 到达延迟指数加权平均的平滑系数
+    private static final int WORKER_COUNT = 1; // 分析工作线程数，大于1时按 device_id 哈希分区并行分析
+    private static final int METRICS_PORT = 9091; // /metrics（Prometheus 文本格式）和 /health 接口端口，0 表示不启动
+    private static final boolean BINARY_WIRE_FORMAT = false; // 是否以二进制格式（BytesMessage）发布分析结果和告警，接收日志时两种格式均可识别
+    private static final boolean SNAPSHOT_MODE = false; // 是否每轮只发布一条包含多台设备的分析快照消息（增量抑制）
+    private static final double SNAPSHOT_EPSILON = 0.5; // 快照模式下占比变化超过该值（百分点）的设备才会发布
+    private static final double SNAPSHOT_RATE_CHANGE = 0.1; // 快照模式下日志接收速率的相对变化超过该比例的设备也会发布
+    private static final int FULL_SNAPSHOT_INTERVAL = 12; // 快照模式下每隔多少轮发布一次全量快照
+    private static final String DEVICE_ID_PROPERTY = "device_id"; // 日志消息上携带设备ID的JMS属性，用于分区选择
+    private static final String BATCH_SIZE_PROPERTY = "batch_size"; // 批量信封消息上携带日志条数的JMS属性
+    private static final String SNAPSHOT_TYPE_PROPERTY = "snapshot_type"; // 分析快照消息的类型属性：full / delta
+    private static final String SEND_TIME_PROPERTY = "send_time_us"; // 日志消息上携带的发送时间（epoch 微秒），用于统计到达延迟
+    private static final String PUBLISH_TIME_PROPERTY = "publish_time_us"; // 分析结果消息上携带的发布时间（epoch 微秒），供监控端统计结果时延
+    private static final String TRIGGER_TIME_PROPERTY = "trigger_time_us"; // 告警消息上携带的触发日志的发送时间（epoch 微秒），供监控端统计告警时延
+
+    private final int partition; // 当前工作线程负责的分区编号
+    private final int partitionCount; // 分区总数
 
     private Connection connection;
-    private Session session;
+    private Session session; // 接收线程使用的会话：消费日志、发布告警
+    private Session publishSession; // 发布线程使用的会话：发布分析结果（JMS 会话不能跨线程共享）
     private MessageConsumer consumer;
     private MessageProducer analysisProducer;
     private MessageProducer alertProducer;
+    private ScheduledExecutorService publisher; // 定时发布分析结果的调度线程
+
+    // 接收线程独占的状态（每个设备只属于一个分区），无需加锁
+    private final IntObjectMap<DeviceState> deviceStateMap = new IntObjectMap<>(); // 存储每个活跃设备的分析状态
+    private final List<LogMessage> batchBuffer = new ArrayList<>(); // 拆分批量信封时复用的列表
+    private volatile long processedCount = 0; // 已处理的日志条数（只有接收线程写入）
+    private double lagMillis = 0; // 日志到达延迟的指数加权平均（毫秒）
+    private volatile boolean degraded = false; // 是否处于降级（INFO 抽样）模式，接收线程写入，发布线程读取
+    private int pendingCount = 0; // 事务模式下已处理但尚未提交的消息数
+    private long pendingStartTime; // 事务模式下第一条未提交消息的处理时间
+    private long currentSendTimeMicros = -1; // 正在处理的消息的发送时间（epoch 微秒），推进告警状态时为 -1
+    private volatile boolean running = true; // stop() 后接收线程在下一次等待结束时退出
+
+    // 运行指标，接收线程或发布线程各自写入，/metrics 接口读取
+    private volatile long consumedCount = 0; // 已接收的 JMS 消息数（批量信封计一条）
+    private volatile long parseFailureCount = 0; // 无法解析而被丢弃的消息数
+    private volatile long alertCount = 0; // 已发布的告警消息数
+    private volatile long publishedCount = 0; // 已发布的分析结果消息数（快照模式下一条快照计一条，只有发布线程写入）
+    private volatile int trackedDevices = 0; // 当前跟踪的设备数
+
+    // 延迟统计（微秒），接收线程记录，可在任意线程查询
+    private final LatencyHistogram arrivalLatency = new LatencyHistogram(); // 日志从生产者发送到被分析器接收的延迟
+    private final LatencyHistogram processingTime = new LatencyHistogram(); // 每条日志的处理耗时（含解析）
+    private final LatencyHistogram parseTime = new LatencyHistogram(); // 每条日志的解析耗时
+    private final LatencyHistogram publishTime = new LatencyHistogram(); // 每个时间片发布分析结果的耗时（发布线程记录）
+
+    // 接收线程发现的新设备通过队列交给发布线程
+    private final ConcurrentLinkedQueue<DeviceState> newDeviceQueue = new ConcurrentLinkedQueue<>();
+
+    // 发布线程独占的状态
+    private final List<DeviceState> publishList = new ArrayList<>(); // 需要发布分析结果的设备
+    private final List<AnalysisResult> snapshotBuffer = new ArrayList<>(); // 本轮待发布的快照内容
+    private long tickCount = 0; // 已执行的分析轮数
+    private int publishSlot = 0; // 下一个要发布的时间片
+    private long lastReportedCount = 0; // 上一个周期结束时的已处理日志条数
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private String lastParsedTimestamp; // 上一次解析的时间戳字符串，同一秒内的日志可直接复用解析结果
+    private long lastParsedSecond;
 
-    private Map<Integer, Deque<LogMessage>> logBufferMap = new ConcurrentHashMap<>(); // 存储每个设备的日志缓冲区
-    private Map<Integer, LogMessage> lastErrorMessageMap = new ConcurrentHashMap<>(); // 存储每个设备的最近一次 ERROR 日志
+    public LogAnalyzer() throws JMSException {
+        this(0, 1);
+    }
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // 创建负责第 partition 个分区（共 partitionCount 个）的分析器，每个分析器有独立的连接、会话和生产者
+    public LogAnalyzer(int partition, int partitionCount) throws JMSException {
+        this(BROKER_URL, partition, partitionCount);
+    }
 
-    public LogAnalyzer() throws JMSException {
-        ConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URL);
+    // 连接到指定 broker 的分析器（基准测试、压测使用嵌入式 broker）
+    public LogAnalyzer(String brokerUrl, int partition, int partitionCount) throws JMSException {
+        this.partition = partition;
+        this.partitionCount = partitionCount;
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerUrl);
+        factory.getPrefetchPolicy().setQueuePrefetch(PREFETCH_SIZE);
         this.connection = factory.createConnection();
         this.connection.start();
-        this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        // 事务模式：消费日志和发布告警在同一个事务中按批提交，崩溃时未提交的日志由 broker 重新投递（至少一次）
+        this.session = ACK_BATCH_SIZE > 1
+                ? connection.createSession(true, Session.SESSION_TRANSACTED)
+                : connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
 
-        // 创建消费者和生产者
+        // 创建消费者和生产者；多分区时由 broker 按选择器只投递本分区设备的日志，保证同一设备的日志顺序
         Destination logQueue = session.createQueue(LOG_QUEUE_NAME);
-        this.consumer = session.createConsumer(logQueue);
+        this.consumer = partitionCount > 1
+                ? session.createConsumer(logQueue, partitionSelector(partition, partitionCount))
+                : session.createConsumer(logQueue);
 
-        Destination analysisQueue = session.createQueue(ANALYSIS_QUEUE_NAME);
-        this.analysisProducer = session.createProducer(analysisQueue);
+        this.publishSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Destination analysisQueue = publishSession.createQueue(ANALYSIS_QUEUE_NAME);
+        this.analysisProducer = publishSession.createProducer(analysisQueue);
 
         Destination alertQueue = session.createQueue(ALERT_QUEUE_NAME);
         this.alertProducer = session.createProducer(alertQueue);
 
-        System.out.println("日志分析器已启动...");
+        System.out.println("日志分析器已启动（分区 " + partition + "/" + partitionCount + "）...");
+    }
+
+    // 分区选择器：device_id % partitionCount == partition；未携带设备ID属性的旧格式消息和设备ID为负数的消息
+    // （取模结果为负，不属于任何分区）统一交给 0 号分区
+    private static String partitionSelector(int partition, int partitionCount) {
+        String selector = DEVICE_ID_PROPERTY + " % " + partitionCount + " = " + partition;
+        return partition == 0 ? DEVICE_ID_PROPERTY + " IS NULL OR " + DEVICE_ID_PROPERTY + " < 0 OR " + selector : selector;
     }
 
     public void startAnalyzing() throws JMSException, InterruptedException {
-        long lastAnalysisTime = System.currentTimeMillis(); // 上次分析的时间戳
+        // 从检查点恢复设备窗口，重启后无需重新积累 N 条日志
+        restoreCheckpoint();
+
+        // 分析结果由独立的调度线程定时发布，接收线程只负责接收日志和告警
+        startPublisher();
+
+        long lastSweepTime = System.currentTimeMillis(); // 上次推进全部设备告警状态的时间
+        long lastCheckpointTime = lastSweepTime; // 上次保存检查点的时间
+        while (running) {
+            long now = System.currentTimeMillis();
+            long waitMillis = lastSweepTime + T * 1000L - now;
+
+            // 事务模式下未提交的消息达到 K 条或等待超过 M 毫秒时提交
+            if (pendingCount > 0) {
+                if (pendingCount >= ACK_BATCH_SIZE || now - pendingStartTime >= ACK_INTERVAL_MS) {
+                    commitPending();
+                    continue;
+                }
+                waitMillis = Math.min(waitMillis, pendingStartTime + ACK_INTERVAL_MS - now);
+            }
 
-        int count = 0;
-        while (true) {
-            // 阻塞等待接收一条日志消息
-            Message message = consumer.receive(T * 1000 - System.currentTimeMillis() + lastAnalysisTime); // 阻塞模式
+            if (waitMillis <= 0) {
+                // 每隔T秒推进一次所有设备的告警状态（没有新日志的设备也可能需要解除告警）
+                sweepAlerts();
+                lastSweepTime = System.currentTimeMillis();
+                commitPending(); // 提交推进过程中发布的告警
+
+                // 设备状态只由接收线程修改，在这里保存检查点可以得到一致的状态；
+                // 检查点之前已全部提交，重启后不会把检查点中已计入的日志再重新投递一次
+                if (CHECKPOINT_INTERVAL_SECONDS > 0 && lastSweepTime - lastCheckpointTime >= CHECKPOINT_INTERVAL_SECONDS * 1000L) {
+                    saveCheckpoint();
+                    lastCheckpointTime = lastSweepTime;
+                }
+                continue;
+            }
 
-            // 如果超时（未接收到消息），直接跳转到分析
-            if (message == null) {
-                long currentTime = System.currentTimeMillis();
-                publishAnalysisResults();
+            // 阻塞等待接收一条日志消息，最多等到下一次告警推进
+            Message message = consumer.receive(waitMillis);
+            if (message != null) {
+                // 根据消息的到达延迟判断是否积压，决定本条消息是否按降级模式处理
+                long lagMicros = messageLagMicros(message);
+                updateLoadShedding(lagMicros);
+
+                long start = System.nanoTime();
+                consumedCount++; // 只有接收线程写入
+                currentSendTimeMicros = message.propertyExists(SEND_TIME_PROPERTY) ? message.getLongProperty(SEND_TIME_PROPERTY) : -1;
+                int count;
+                try {
+                    count = handleMessage(message);
+                } catch (IllegalArgumentException e) {
+                    // 无法解析的消息直接丢弃（事务模式下随本批提交），不中断接收
+                    parseFailureCount++;
+                    System.out.println("分区 " + partition + " 丢弃无法解析的消息：" + e.getMessage());
+                    count = 0;
+                }
+                currentSendTimeMicros = -1;
+                processedCount += count; // 只有接收线程写入，非原子的自增是安全的
+
+                // 批量信封按其中的日志条数计入，处理耗时平摊到每条日志
+                if (count > 0) {
+                    processingTime.record((System.nanoTime() - start) / 1000 / count, count);
+                    if (message.propertyExists(SEND_TIME_PROPERTY)) {
+                        arrivalLatency.record(lagMicros, count);
+                    }
+                }
+
+                if (session.getTransacted()) {
+                    if (pendingCount == 0) {
+                        pendingStartTime = System.currentTimeMillis();
+                    }
+                    pendingCount++;
+                }
+            }
+        }
+        commitPending(); // 停止前提交已处理的消息
+    }
 
-                System.out.println("处理了：" + count);
+    // 消息从发送到被接收的延迟（微秒）：优先使用生产者设置的微秒发送时间，否则使用 JMS 的毫秒时间戳；都没有时返回 -1
+    private static long messageLagMicros(Message message) throws JMSException {
+        if (message.propertyExists(SEND_TIME_PROPERTY)) {
+            return currentTimeMicros() - message.getLongProperty(SEND_TIME_PROPERTY);
+        }
+        long sendMillis = message.getJMSTimestamp();
+        return sendMillis > 0 ? (System.currentTimeMillis() - sendMillis) * 1000 : -1;
+    }
 
-                // 更新上次分析的时间戳
-                lastAnalysisTime = currentTime;
+    // 更新平滑后的到达延迟，并按迟滞阈值切换降级模式
+    private void updateLoadShedding(long lagMicros) {
+        if (lagMicros < 0 || INFO_SAMPLE_INTERVAL <= 1) {
+            return;
+        }
+        lagMillis += LAG_SMOOTHING * (lagMicros / 1000.0 - lagMillis);
+        if (!degraded && lagMillis > SHED_ENTER_LAG_MS) {
+            degraded = true;
+            System.out.println("分区 " + partition + " 日志积压（到达延迟约 " + Math.round(lagMillis) + " ms），进入降级模式：INFO 日志每 " + INFO_SAMPLE_INTERVAL + " 条处理一条");
+        } else if (degraded && lagMillis < SHED_EXIT_LAG_MS) {
+            degraded = false;
+            System.out.println("分区 " + partition + " 积压已消除（到达延迟约 " + Math.round(lagMillis) + " ms），恢复全量处理");
+        }
+    }
 
-                // 重置计数器
-                count = 0;
+    // 提交事务模式下已处理的消息和已发布的告警；非事务模式下什么也不做
+    private void commitPending() throws JMSException {
+        if (session.getTransacted()) {
+            session.commit();
+            pendingCount = 0;
+        }
+    }
 
-                continue; // 跳过后续逻辑，进入下一次循环
+    // 启动发布调度：每个周期划分为若干时间片，按固定频率执行，不受接收线程负载影响
+    private void startPublisher() {
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-analyzer-publisher-" + partition);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int slots = SNAPSHOT_MODE ? 1 : Math.max(1, PUBLISH_SLOTS); // 快照模式每个周期只发布一条消息
+        long periodMillis = Math.max(1, T * 1000L / slots);
+        publisher.scheduleAtFixedRate(() -> {
+            try {
+                publishNextSlot(slots);
+            } catch (Exception e) {
+                e.printStackTrace(); // 不能让异常逃逸，否则后续的定时任务会被取消
             }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
 
-            count += 1;
-            if (message instanceof TextMessage) {
-                String jsonMessage = ((TextMessage) message).getText();
-
-                // 解析日志消息
-                LogMessage logMessage = parseLogMessage(jsonMessage);
+    private void publishNextSlot(int slots) throws JMSException {
+        int slot = publishSlot;
+        publishSlot = (slot + 1) % slots;
+        long start = System.nanoTime();
+        publishAnalysisResults(slot, slots);
+        publishTime.record((System.nanoTime() - start) / 1000);
+
+        // 一个完整周期结束时输出本周期处理的日志条数
+        if (slot == slots - 1) {
+            long processed = processedCount;
+            System.out.println("分区 " + partition + " 处理了：" + (processed - lastReportedCount)
+                    + "，到达延迟(us)：" + arrivalLatency.summary() + "，处理耗时(us)：" + processingTime.summary());
+            lastReportedCount = processed;
+        }
+    }
 
-                // 处理日志消息
+    // 处理一条 JMS 消息（单条日志或批量信封），返回其中包含的日志条数
+    private int handleMessage(Message message) throws JMSException {
+        boolean binary = BinaryCodec.isBinary(message);
+
+        // 批量信封：逐条拆开后按顺序处理
+        long start = System.nanoTime();
+        if (message.propertyExists(BATCH_SIZE_PROPERTY)) {
+            batchBuffer.clear();
+            if (binary) {
+                BinaryCodec.readLogBatch((BytesMessage) message, batchBuffer);
+            } else if (message instanceof TextMessage) {
+                parseLogBatch(((TextMessage) message).getText(), batchBuffer);
+            }
+            if (!batchBuffer.isEmpty()) {
+                parseTime.record((System.nanoTime() - start) / 1000 / batchBuffer.size(), batchBuffer.size());
+            }
+            for (LogMessage logMessage : batchBuffer) {
                 processLogMessage(logMessage);
             }
+            int size = batchBuffer.size();
+            batchBuffer.clear();
+            return size;
+        }
 
-            // 获取当前时间
-            long currentTime = System.currentTimeMillis();
-
-            // 检查是否需要执行分析
-            if (currentTime - lastAnalysisTime >= T * 1000) {
-                publishAnalysisResults();
+        if (binary) {
+            // 二进制格式的日志消息
+            LogMessage logMessage = BinaryCodec.readLogMessage((BytesMessage) message);
+            parseTime.record((System.nanoTime() - start) / 1000);
+            processLogMessage(logMessage);
+        } else if (message instanceof TextMessage) {
+            String jsonMessage = ((TextMessage) message).getText();
 
-                System.out.println("处理了：" + count);
-                count = 0;
+            // 解析日志消息
+            LogMessage logMessage = parseLogMessage(jsonMessage);
+            parseTime.record((System.nanoTime() - start) / 1000);
 
-                // 更新上次分析的时间戳
-                lastAnalysisTime = currentTime;
-            }
+            // 处理日志消息
+            processLogMessage(logMessage);
         }
+        return 1;
     }
 
     public LogMessage parseLogMessage(String jsonMessage) {
         try {
-            // 使用Jackson将JSON字符串解析为JsonNode对象
-            JsonNode jsonNode = objectMapper.readTree(jsonMessage);
-
-            // 提取字段值
-            int deviceId = jsonNode.get("device_id").asInt();
-            String timestamp = jsonNode.get("timestamp").asText();
-            String logLevel = jsonNode.get("log_level").asText();
-            String message = jsonNode.get("message").asText();
-
-            // 创建并返回LogMessage对象
-            return new LogMessage(deviceId, timestamp, logLevel, message);
+            // 使用流式解析器直接读取字段，不构建 JsonNode 树
+            return JsonCodec.readLogMessage(jsonMessage);
         } catch (Exception e) {
             // 捕获任何异常并抛出自定义异常
             throw new IllegalArgumentException("Failed to parse log message: " + jsonMessage, e);
         }
     }
 
-    private void processLogMessage(LogMessage logMessage) throws JMSException{
+    public void parseLogBatch(String jsonMessage, List<LogMessage> out) {
+        try {
+            JsonCodec.readLogBatch(jsonMessage, out);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to parse log batch: " + jsonMessage, e);
+        }
+    }
+
+    // 处理一条日志（包内可见，供 log-bench 模块的基准测试直接调用；registerDevice、publishAnalysisResults、checkAndPublishAlerts 同理）
+    void processLogMessage(LogMessage logMessage) throws JMSException{
         int device_id = logMessage.getDevice_id();
-        logBufferMap.putIfAbsent(device_id, new ArrayDeque<>(N));
-        Deque<LogMessage> buffer = logBufferMap.get(device_id);
+        DeviceState state = deviceStateMap.get(device_id);
+        if (state == null) {
+            state = newDeviceState(device_id);
+            registerDevice(state);
+        }
 
-        // 添加日志到缓冲区
-        if (buffer.size() >= N) {
-            buffer.poll(); // 移除最早的日志
+        state.countIngested();
+        long nowSecond = currentSecond();
+        state.setLastSeenSecond(nowSecond);
+
+        // 降级模式下 INFO 日志按固定间隔抽样，抽中的一条按间隔加权计入统计；WARN/ERROR 始终全量处理
+        byte level = DeviceWindow.levelCode(logMessage.getLog_level());
+        int weight = 1;
+        if (degraded && level == DeviceWindow.LEVEL_INFO) {
+            weight = state.sampleInfo(INFO_SAMPLE_INTERVAL);
+            if (weight == 0) {
+                return;
+            }
         }
-        buffer.add(logMessage);
+
+        // 添加日志到滑动窗口（窗口满时自动移除最早的日志）
+        state.getWindow().add(level, weight);
+
+        // 按时间戳所在的秒计入告警窗口
+        state.getAlertWindow().add(toEpochSecond(logMessage.getTimestamp()), level == DeviceWindow.LEVEL_ERROR, nowSecond, weight);
 
         // 如果是ERROR日志，更新最近一次ERROR日志
-        if (logMessage.getLog_level().equals("ERROR")) {
-            lastErrorMessageMap.put(device_id, logMessage);
+        if (level == DeviceWindow.LEVEL_ERROR) {
+            state.setLastError(logMessage);
+        }
+
+        // ERROR/WARN 日志内容计入高频项统计
+        if (level != DeviceWindow.LEVEL_INFO) {
+            state.getTopMessages().add(level, logMessage.getMessage());
         }
 
         // 检测是否需要告警
-        checkAndPublishAlerts(device_id);
+        checkAndPublishAlerts(state);
     }
 
-    private void publishAnalysisResults() throws JMSException {
-        for (Map.Entry<Integer, Deque<LogMessage>> entry : logBufferMap.entrySet()) {
-            int device_id = entry.getKey();
-            Deque<LogMessage> buffer = entry.getValue();
+    // 登记一个新设备（由接收线程调用）
+    void registerDevice(DeviceState state) {
+        deviceStateMap.put(state.getDeviceId(), state);
+        trackedDevices = deviceStateMap.size();
+        newDeviceQueue.offer(state); // 通知发布线程
+    }
+
+    private static DeviceState newDeviceState(int device_id) {
+        return newDeviceState(device_id, N);
+    }
+
+    // 窗口大小为 windowSize、其余配置与分析时相同的设备状态（基准测试也使用）
+    static DeviceState newDeviceState(int device_id, int windowSize) {
+        return new DeviceState(device_id, new DeviceWindow(windowSize), new AlertWindow(S),
+                new AlertStateMachine(ALERT_RAISE_THRESHOLD, ALERT_CLEAR_THRESHOLD, ALERT_RENOTIFY_INTERVAL_MS),
+                new TopKSketch(TOP_K_CAPACITY));
+    }
+
+    // 保存所有设备状态到本工作线程的检查点文件（由接收线程调用），失败不影响分析
+    private void saveCheckpoint() {
+        long start = System.nanoTime();
+        try {
+            Path dir = Paths.get(CHECKPOINT_DIR);
+            Files.createDirectories(dir);
+            int count = StateCheckpoint.write(dir.resolve("analyzer-" + partition + ".ckpt"), deviceStateMap);
+            System.out.println("分区 " + partition + " 检查点已保存：" + count + " 台设备，耗时 " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.out.println("分区 " + partition + " 检查点保存失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            // 计算ERROR和WARN占比
-            long totalLogs = buffer.size();
-            long errorCount = buffer.stream().filter(log -> log.getLog_level().equals("ERROR")).count();
-            long warnCount = buffer.stream().filter(log -> log.getLog_level().equals("WARN")).count();
+    // 从检查点目录下的所有检查点文件中恢复属于本分区的设备（工作线程数变化后仍可恢复）
+    private void restoreCheckpoint() {
+        Path dir = Paths.get(CHECKPOINT_DIR);
+        if (CHECKPOINT_INTERVAL_SECONDS <= 0 || !Files.isDirectory(dir)) {
+            return;
+        }
+        long start = System.nanoTime();
+        long expireSecond = currentSecond() - DEVICE_TTL_SECONDS;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "analyzer-*.ckpt")) {
+            for (Path file : files) {
+                try {
+                    StateCheckpoint.restore(file, this::ownsDevice, expireSecond, LogAnalyzer::newDeviceState, deviceStateMap);
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("检查点文件 " + file + " 无法恢复，已跳过：" + e);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (int i = 0; i < deviceStateMap.size(); i++) {
+            newDeviceQueue.offer(deviceStateMap.valueAt(i)); // 交给发布线程
+        }
+        trackedDevices = deviceStateMap.size();
+        System.out.println("分区 " + partition + " 已从检查点恢复 " + deviceStateMap.size() + " 台设备，耗时 " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
 
-            double errorPercentage = totalLogs > 0 ? (double) errorCount / totalLogs * 100 : 0;
-            double warnPercentage = totalLogs > 0 ? (double) warnCount / totalLogs * 100 : 0;
+    // 设备是否属于本分区，与分区选择器的规则一致
+    private boolean ownsDevice(int device_id) {
+        if (partitionCount <= 1) {
+            return true;
+        }
+        return device_id < 0 ? partition == 0 : device_id % partitionCount == partition;
+    }
 
-            // 获取最近一次ERROR事件的时间戳和日志内容
-            LogMessage lastErrorMessage = lastErrorMessageMap.get(device_id); // 可能为 null
+    // 推进所有设备的告警状态，并淘汰空闲超时的设备（由接收线程调用）
+    private void sweepAlerts() throws JMSException {
+        long expireSecond = currentSecond() - DEVICE_TTL_SECONDS;
+        // 倒序遍历：删除时最后一个元素移到当前位置，该元素已经遍历过
+        for (int i = deviceStateMap.size() - 1; i >= 0; i--) {
+            DeviceState state = deviceStateMap.valueAt(i);
+            checkAndPublishAlerts(state);
+            if (state.getLastSeenSecond() <= expireSecond) {
+                deviceStateMap.removeAt(i);
+                state.setEvicted(true); // 通知发布线程
+                System.out.println("设备 " + state.getDeviceId() + " 空闲超过 " + DEVICE_TTL_SECONDS + " 秒，已淘汰");
+            }
+        }
+        trackedDevices = deviceStateMap.size();
+    }
 
-            // 如果没有最近的 ERROR 日志，提供默认值
-            String errorMessageContent = lastErrorMessage != null
-                    ? lastErrorMessage.getMessage() // 提取日志内容
-                    : "无"; // 默认值
+    // 发布第 slot 个时间片（共 slots 个）的设备的分析结果（由发布线程调用）
+    void publishAnalysisResults(int slot, int slots) throws JMSException {
+        // 每个周期开始时移除已淘汰的设备，周期内各时间片看到的列表保持不变
+        if (slot == 0) {
+            publishList.removeIf(DeviceState::isEvicted);
+        }
 
-            String lastErrorTimestamp = lastErrorMessage != null
-                    ? lastErrorMessage.getTimestamp() // 提取日志内容
-                    : "0000-00-00 00:00:00"; // 默认值
+        // 接收线程新发现的设备加入发布列表（只追加到末尾，不影响周期内已分配的时间片）
+        DeviceState added;
+        while ((added = newDeviceQueue.poll()) != null) {
+            publishList.add(added);
+        }
 
-            String analysisTimestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        String analysisTimestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
+        long nowNanos = System.nanoTime();
+
+        // 每隔 FULL_SNAPSHOT_INTERVAL 轮发布一次全量快照，供监控端重新同步
+        boolean fullSnapshot = tickCount++ % FULL_SNAPSHOT_INTERVAL == 0;
+
+        for (int i = slot; i < publishList.size(); i += slots) {
+            DeviceState state = publishList.get(i);
+            AnalysisResult result = buildAnalysisResult(state, analysisTimestamp, nowNanos);
+            if (SNAPSHOT_MODE) {
+                // 快照模式：只收集相对上次发布有变化的设备（全量快照时收集全部设备）
+                if (fullSnapshot || hasChanged(state.getLastPublished(), result)) {
+                    snapshotBuffer.add(result);
+                    state.setLastPublished(result);
+                }
+            } else {
+                String json = result.toJson();
+                Message analysisMessage = BINARY_WIRE_FORMAT
+                        ? BinaryCodec.createAnalysisResult(publishSession, result)
+                        : publishSession.createTextMessage(json);
+                analysisMessage.setLongProperty(PUBLISH_TIME_PROPERTY, currentTimeMicros());
+                analysisProducer.send(analysisMessage);
+                publishedCount++;
+                System.out.println("设备 " + state.getDeviceId() + " 分析结果已发布: " + json);
+            }
+        }
 
-            // 创建分析结果
-            AnalysisResult result = new AnalysisResult(device_id, errorPercentage, warnPercentage, lastErrorTimestamp, errorMessageContent, analysisTimestamp);
-            TextMessage analysisMessage = session.createTextMessage(result.toJson());
-            analysisProducer.send(analysisMessage);
-            System.out.println("设备 " + device_id + " 分析结果已发布: " + result.toJson());
+        if (SNAPSHOT_MODE) {
+            publishSnapshot(fullSnapshot);
         }
     }
 
-    private void checkAndPublishAlerts(int device_id) throws JMSException {
-        // 检查指定设备的日志缓冲区是否存在
-        if (!logBufferMap.containsKey(device_id)) {
-            System.out.println("设备 " + device_id + " 无日志记录，无需分析。");
-            return;
+    // 根据设备状态的一致快照生成分析结果，接收线程可以同时继续更新该设备
+    private AnalysisResult buildAnalysisResult(DeviceState state, String analysisTimestamp, long nowNanos) {
+        // ERROR和WARN占比由窗口内的计数器直接得出
+        long stats = state.getWindow().getStatsSnapshot();
+        double errorPercentage = DeviceWindow.snapshotErrorPercentage(stats);
+        double warnPercentage = DeviceWindow.snapshotWarnPercentage(stats);
+
+        // 获取最近一次ERROR事件的时间戳和日志内容
+        LogMessage lastErrorMessage = state.getLastError(); // 可能为 null
+
+        // 如果没有最近的 ERROR 日志，提供默认值
+        String errorMessageContent = lastErrorMessage != null
+                ? lastErrorMessage.getMessage() // 提取日志内容
+                : "无"; // 默认值
+
+        String lastErrorTimestamp = lastErrorMessage != null
+                ? lastErrorMessage.getTimestamp() // 提取日志内容
+                : "0000-00-00 00:00:00"; // 默认值
+
+        // 出现次数最多的 ERROR/WARN 日志内容
+        List<MessageCount> topMessages = state.getTopMessages().topK(TOP_K);
+
+        // 自上次发布以来的日志接收速率
+        double ingestRate = state.updateIngestRate(nowNanos);
+
+        // 创建分析结果
+        return new AnalysisResult(state.getDeviceId(), errorPercentage, warnPercentage, lastErrorTimestamp, errorMessageContent, analysisTimestamp, topMessages, ingestRate, degraded);
+    }
+
+    // 将本轮收集到的分析结果打包成一条快照消息发布
+    private void publishSnapshot(boolean fullSnapshot) throws JMSException {
+        if (snapshotBuffer.isEmpty()) {
+            return; // 没有任何设备发生变化，本轮不发布
         }
+        String snapshotType = fullSnapshot ? "full" : "delta";
+        Message snapshotMessage = BINARY_WIRE_FORMAT
+                ? BinaryCodec.createAnalysisSnapshot(publishSession, snapshotType, snapshotBuffer)
+                : publishSession.createTextMessage(JsonCodec.writeAnalysisSnapshot(snapshotType, snapshotBuffer));
+        snapshotMessage.setStringProperty(SNAPSHOT_TYPE_PROPERTY, snapshotType);
+        snapshotMessage.setLongProperty(PUBLISH_TIME_PROPERTY, currentTimeMicros());
+        analysisProducer.send(snapshotMessage);
+        publishedCount++;
+        System.out.println("分区 " + partition + " 分析快照已发布（" + snapshotType + "）: " + snapshotBuffer.size() + " 台设备");
+        snapshotBuffer.clear();
+    }
+
+    // 判断分析结果相对上次发布的结果是否有超过阈值的变化
+    private static boolean hasChanged(AnalysisResult previous, AnalysisResult current) {
+        return previous == null
+                || Math.abs(current.getError_percentage() - previous.getError_percentage()) > SNAPSHOT_EPSILON
+                || Math.abs(current.getWarn_percentage() - previous.getWarn_percentage()) > SNAPSHOT_EPSILON
+                || !current.getLast_error_timestamp().equals(previous.getLast_error_timestamp())
+                || !current.getLast_error_message().equals(previous.getLast_error_message())
+                || current.isDegraded() != previous.isDegraded()
+                || rateChanged(previous.getIngest_rate(), current.getIngest_rate())
+                || !sameMessages(previous.getTop_messages(), current.getTop_messages());
+    }
+
+    // 日志接收速率的相对变化是否超过 SNAPSHOT_RATE_CHANGE（从 0 变为非 0 也算变化）
+    private static boolean rateChanged(double previous, double current) {
+        return Math.abs(current - previous) > SNAPSHOT_RATE_CHANGE * Math.max(Math.abs(previous), Math.abs(current));
+    }
+
+    // 高频日志内容的排名是否相同（计数持续增长，只比较内容和顺序）
+    private static boolean sameMessages(List<MessageCount> previous, List<MessageCount> current) {
+        if (previous.size() != current.size()) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            MessageCount a = previous.get(i);
+            MessageCount b = current.get(i);
+            if (!a.getLog_level().equals(b.getLog_level()) || !a.getMessage().equals(b.getMessage())) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        // 获取指定设备的日志缓冲区
-        Deque<LogMessage> buffer = logBufferMap.get(device_id);
+    void checkAndPublishAlerts(DeviceState state) throws JMSException {
+        int device_id = state.getDeviceId();
 
-        // 检查最近 S 秒内的 ERROR 占比
-        long recentLogs = buffer.stream()
-                .filter(log -> isWithinTimeRange(log.getTimestamp(), S))
-                .count();
-        long recentErrorLogs = buffer.stream()
-                .filter(log -> isWithinTimeRange(log.getTimestamp(), S) && log.getLog_level().equals("ERROR"))
-                .count();
+        // 检查最近 S 秒内的 ERROR 占比（按秒分桶的累计值，常数时间）
+        double errorPercentage = state.getAlertWindow().getErrorPercentage(currentSecond());
 
-        double errorPercentage = recentLogs > 0 ? (double) recentErrorLogs / recentLogs * 100 : 0;
+        // 由告警状态机决定是否发布：仅在触发、解除或持续告警的提醒间隔到达时发布
+        AlertStateMachine.State transition = state.getAlertState().update(errorPercentage, System.currentTimeMillis());
+        if (transition == null) {
+            return;
+        }
 
-        // 如果 ERROR 占比超过 50%，生成告警消息
-        if (errorPercentage > 50) {
-            // 生成告警消息
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            AlertMessage alertMessage = new AlertMessage(device_id, timestamp, "ERROR占比超过50%");
-            TextMessage alert = session.createTextMessage(alertMessage.toJson());
-            alertProducer.send(alert);
-            System.out.println("设备 " + device_id + " 告警已发布: " + alertMessage.toJson());
+        String content;
+        switch (transition) {
+            case RAISED:
+                content = "ERROR占比超过" + (int) ALERT_RAISE_THRESHOLD + "%";
+                break;
+            case SUSTAINED:
+                content = "ERROR占比持续超过" + (int) ALERT_RAISE_THRESHOLD + "%";
+                break;
+            default:
+                content = "ERROR占比已恢复正常";
+                break;
         }
+
+        // 生成告警消息
+        String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
+        AlertMessage alertMessage = new AlertMessage(device_id, timestamp, content, transition.name());
+        String json = alertMessage.toJson();
+        Message alert = BINARY_WIRE_FORMAT
+                ? BinaryCodec.createAlertMessage(session, alertMessage)
+                : session.createTextMessage(json);
+        if (currentSendTimeMicros > 0) {
+            alert.setLongProperty(TRIGGER_TIME_PROPERTY, currentSendTimeMicros); // 由新日志触发的告警才携带
+        }
+        alertProducer.send(alert);
+        alertCount++;
+        System.out.println("设备 " + device_id + " 告警已发布: " + json);
     }
 
+    // 将 "yyyy-MM-dd HH:mm:ss" 格式的时间戳解析为 epoch 秒（按本地时间计，仅用于相互比较）
+    private long toEpochSecond(String timestamp) {
+        if (!timestamp.equals(lastParsedTimestamp)) {
+            lastParsedSecond = LocalDateTime.parse(timestamp, TIMESTAMP_FORMATTER).toEpochSecond(ZoneOffset.UTC);
+            lastParsedTimestamp = timestamp;
+        }
+        return lastParsedSecond;
+    }
+
+    // 当前本地时间的 epoch 秒，与 toEpochSecond 的结果可直接比较
+    private long currentSecond() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    }
 
-    private boolean isWithinTimeRange(String timestamp, int seconds) {
-        LocalDateTime logTime = LocalDateTime.parse(timestamp, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        LocalDateTime now = LocalDateTime.now();
-        return java.time.Duration.between(logTime, now).getSeconds() <= seconds;
+    // 当前时间的 epoch 微秒，跨进程比较时依赖各主机时钟同步
+    private static long currentTimeMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+    // 已处理的日志条数
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public LatencyHistogram getArrivalLatency() {
+        return arrivalLatency;
+    }
+
+    public LatencyHistogram getProcessingTime() {
+        return processingTime;
+    }
+
+    // 停止接收，startAnalyzing() 最迟在一个发布周期（T 秒）后返回
+    public void stop() {
+        running = false;
     }
 
     public void close() throws JMSException {
+        if (publisher != null) {
+            publisher.shutdownNow();
+        }
         if (connection != null) {
             connection.close();
         }
     }
 
+    // JMS 连接是否正常：未关闭、传输层未断开且已启动
+    public boolean isConnectionUp() {
+        if (connection instanceof ActiveMQConnection) {
+            ActiveMQConnection activeMQConnection = (ActiveMQConnection) connection;
+            return !activeMQConnection.isClosed() && !activeMQConnection.isTransportFailed() && activeMQConnection.isStarted();
+        }
+        return connection != null;
+    }
+
+    // 启动 /metrics 和 /health 接口，一个进程内的所有工作线程共用，各指标以 partition 标签区分
+    private static void startMetricsServer(List<LogAnalyzer> analyzers) {
+        if (METRICS_PORT <= 0) {
+            return;
+        }
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(METRICS_PORT), 0);
+            server.createContext("/metrics", exchange -> {
+                PrometheusWriter writer = new PrometheusWriter();
+                writeMetrics(writer, analyzers);
+                writer.jvm();
+                respond(exchange, 200, PrometheusWriter.CONTENT_TYPE, writer.toBytes());
+            });
+            // 所有工作线程的 JMS 连接都正常时返回 200，否则返回 503
+            server.createContext("/health", exchange -> {
+                boolean up = true;
+                for (LogAnalyzer analyzer : analyzers) {
+                    up &= analyzer.isConnectionUp();
+                }
+                respond(exchange, up ? 200 : 503, "text/plain; charset=utf-8", (up ? "UP" : "DOWN").getBytes(StandardCharsets.UTF_8));
+            });
+            server.setExecutor(null); // 使用默认线程池
+            server.start();
+            System.out.println("指标接口已启动，访问 http://localhost:" + METRICS_PORT + "/metrics 获取运行指标");
+        } catch (IOException e) {
+            System.out.println("指标接口启动失败：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeMetrics(PrometheusWriter writer, List<LogAnalyzer> analyzers) {
+        writer.family("loganalyzer_messages_consumed_total", "counter", "已接收的日志消息数（批量信封计一条）");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_messages_consumed_total", analyzer.partitionLabel(), analyzer.consumedCount);
+        }
+        writer.family("loganalyzer_logs_processed_total", "counter", "已处理的日志条数");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_logs_processed_total", analyzer.partitionLabel(), analyzer.processedCount);
+        }
+        writer.family("loganalyzer_parse_failures_total", "counter", "无法解析而被丢弃的消息数");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_parse_failures_total", analyzer.partitionLabel(), analyzer.parseFailureCount);
+        }
+        writer.family("loganalyzer_messages_published_total", "counter", "已发布的分析结果消息数");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_messages_published_total", analyzer.partitionLabel(), analyzer.publishedCount);
+        }
+        writer.family("loganalyzer_alerts_emitted_total", "counter", "已发布的告警消息数");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_alerts_emitted_total", analyzer.partitionLabel(), analyzer.alertCount);
+        }
+        writer.family("loganalyzer_devices_tracked", "gauge", "当前跟踪的设备数");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_devices_tracked", analyzer.partitionLabel(), analyzer.trackedDevices);
+        }
+        writer.family("loganalyzer_degraded", "gauge", "是否处于降级（INFO 抽样）模式，1 表示是");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_degraded", analyzer.partitionLabel(), analyzer.degraded ? 1 : 0);
+        }
+        writer.family("loganalyzer_jms_connection_up", "gauge", "JMS 连接是否正常，1 表示正常");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_jms_connection_up", analyzer.partitionLabel(), analyzer.isConnectionUp() ? 1 : 0);
+        }
+        writer.family("loganalyzer_jms_session_transacted", "gauge", "接收会话是否为事务模式，1 表示是");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_jms_session_transacted", analyzer.partitionLabel(), ACK_BATCH_SIZE > 1 ? 1 : 0);
+        }
+        writer.family("loganalyzer_jms_pending_commit", "gauge", "事务模式下已处理但尚未提交的消息数");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.sample("loganalyzer_jms_pending_commit", analyzer.partitionLabel(), analyzer.pendingCount);
+        }
+
+        writer.family("loganalyzer_arrival_lag_seconds", "summary", "日志从生产者发送到被分析器接收的延迟（秒）");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.summary("loganalyzer_arrival_lag_seconds", analyzer.partitionLabel(), analyzer.arrivalLatency);
+        }
+        // 各阶段耗时：parse 为每条日志的解析，handle 为每条日志的完整处理（含解析），publish 为每个时间片的发布
+        writer.family("loganalyzer_stage_seconds", "summary", "各处理阶段的耗时（秒）");
+        for (LogAnalyzer analyzer : analyzers) {
+            writer.summary("loganalyzer_stage_seconds", analyzer.partitionLabel() + "," + PrometheusWriter.label("stage", "parse"), analyzer.parseTime);
+            writer.summary("loganalyzer_stage_seconds", analyzer.partitionLabel() + "," + PrometheusWriter.label("stage", "handle"), analyzer.processingTime);
+            writer.summary("loganalyzer_stage_seconds", analyzer.partitionLabel() + "," + PrometheusWriter.label("stage", "publish"), analyzer.publishTime);
+        }
+    }
+
+    private String partitionLabel() {
+        return PrometheusWriter.label("partition", partition);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
     public static void main(String[] args) throws JMSException, InterruptedException {
-        LogAnalyzer analyzer = new LogAnalyzer();
-        analyzer.startAnalyzing();
+        if (WORKER_COUNT <= 1) {
+            LogAnalyzer analyzer = new LogAnalyzer();
+            startMetricsServer(List.of(analyzer));
+            analyzer.startAnalyzing();
+            return;
+        }
+
+        // 多线程模式：每个工作线程负责一个分区的设备
+        List<LogAnalyzer> analyzers = new ArrayList<>();
+        Thread[] workers = new Thread[WORKER_COUNT];
+        for (int i = 0; i < WORKER_COUNT; i++) {
+            LogAnalyzer analyzer = new LogAnalyzer(i, WORKER_COUNT);
+            analyzers.add(analyzer);
+            workers[i] = new Thread(() -> {
+                try {
+                    analyzer.startAnalyzing();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    try {
+                        analyzer.close();
+                    } catch (JMSException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, "log-analyzer-" + i);
+            workers[i].start();
+        }
+        startMetricsServer(analyzers);
+        for (Thread worker : workers) {
+            worker.join();
+        }
     }
 }
\ No newline at end of file
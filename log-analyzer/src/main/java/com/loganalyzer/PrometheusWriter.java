@@ -0,0 +1,85 @@
+package com.loganalyzer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+
+// 按 Prometheus 文本格式（version 0.0.4）输出指标，供 /metrics 接口使用
+// 同一指标的样本必须连续输出：先用 family 写出说明和类型，再逐个写出样本
+public class PrometheusWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999}; // summary 输出的分位数
+
+    private final StringBuilder out = new StringBuilder(4096);
+
+    // 写出指标的说明和类型（counter / gauge / summary）
+    public void family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // 写出一个样本，labels 为 label() 拼接的标签，没有标签时传 null
+    public void sample(String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    // 以 summary 类型写出直方图：各分位数、总和、次数；直方图按微秒记录，输出按 Prometheus 惯例换算为秒
+    public void summary(String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            sample(name, prefix + label("quantile", quantile), histogram.getPercentile(quantile * 100) / 1e6);
+        }
+        sample(name + "_sum", labels, histogram.getSum() / 1e6);
+        sample(name + "_count", labels, histogram.getCount());
+    }
+
+    // JVM 的堆内存、GC、线程和运行时长
+    public void jvm() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        family("jvm_memory_bytes_used", "gauge", "JVM 已使用的内存（字节）");
+        sample("jvm_memory_bytes_used", label("area", "heap"), heap.getUsed());
+        sample("jvm_memory_bytes_used", label("area", "nonheap"), nonHeap.getUsed());
+        family("jvm_memory_bytes_committed", "gauge", "JVM 已向操作系统申请的内存（字节）");
+        sample("jvm_memory_bytes_committed", label("area", "heap"), heap.getCommitted());
+        sample("jvm_memory_bytes_committed", label("area", "nonheap"), nonHeap.getCommitted());
+        family("jvm_memory_bytes_max", "gauge", "JVM 可使用的最大内存（字节），-1 表示未限制");
+        sample("jvm_memory_bytes_max", label("area", "heap"), heap.getMax());
+        sample("jvm_memory_bytes_max", label("area", "nonheap"), nonHeap.getMax());
+
+        family("jvm_gc_collections_total", "counter", "各垃圾收集器的累计收集次数");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample("jvm_gc_collections_total", label("gc", gc.getName()), gc.getCollectionCount());
+        }
+        family("jvm_gc_collection_seconds_total", "counter", "各垃圾收集器的累计收集耗时（秒）");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample("jvm_gc_collection_seconds_total", label("gc", gc.getName()), gc.getCollectionTime() / 1000.0);
+        }
+
+        family("jvm_threads_live", "gauge", "JVM 当前的线程数");
+        sample("jvm_threads_live", null, ManagementFactory.getThreadMXBean().getThreadCount());
+        family("process_uptime_seconds", "gauge", "进程已运行的时间（秒）");
+        sample("process_uptime_seconds", null, ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+    }
+
+    // 生成一个标签 key="value"，多个标签用逗号连接
+    public static String label(String key, Object value) {
+        String text = String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return key + "=\"" + text + "\"";
+    }
+
+    public byte[] toBytes() {
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
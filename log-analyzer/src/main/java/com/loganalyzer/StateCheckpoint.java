@@ -0,0 +1,163 @@
+package com.loganalyzer;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+// 分析器设备状态的检查点文件，通过内存映射（MappedByteBuffer）读写，重启后可在毫秒级恢复滑动窗口
+// 先写入临时文件并刷盘，再原子地重命名为正式文件，进程在写入过程中退出也不会留下不完整的检查点
+// 写入前先算出文件的准确大小再映射，映射期间不改变文件长度（Windows 上不能截断已映射的文件）
+//
+// 文件布局（小端序）：
+//   头部：魔数 int | 版本 int | 设备数 int | 保存时间 epoch 毫秒 long
+//   每个设备：记录长度 int（不含自身）| 设备ID int | 最近收到日志的时间 epoch 秒 long
+//            | 窗口条数 int + 按时间顺序的日志级别编码 byte[] | 最近一次 ERROR 的时间戳、内容（字符串）
+//            | 告警状态 byte + 上一次发布告警的时间 epoch 毫秒 long | 告警窗口（见 AlertWindow.writeBuckets）（版本 2 起）
+//   字符串：UTF-8 字节数 int（-1 表示 null）+ 字节
+public final class StateCheckpoint {
+    private static final int MAGIC = 0x4C41434B; // "LACK"
+    private static final int VERSION = 2; // 版本 1 没有告警状态，仍可恢复（告警状态从 CLEARED 开始）
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+    private static final int RECORD_FIXED_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 1 + 8; // 记录中除日志级别、字符串内容和告警窗口外的固定部分
+
+    private StateCheckpoint() {
+    }
+
+    // 将全部设备状态写入检查点文件（由接收线程调用），返回写入的设备数
+    public static int write(Path file, IntObjectMap<DeviceState> states) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        // 先编码各设备最近一次 ERROR 的字符串，得到文件的准确大小
+        byte[][] strings = new byte[states.size() * 2][];
+        long size = HEADER_SIZE;
+        for (int i = 0; i < states.size(); i++) {
+            DeviceState state = states.valueAt(i);
+            LogMessage lastError = state.getLastError();
+            strings[i * 2] = encode(lastError == null ? null : lastError.getTimestamp());
+            strings[i * 2 + 1] = encode(lastError == null ? null : lastError.getMessage());
+            size += RECORD_FIXED_SIZE + state.getWindow().getSize() + length(strings[i * 2]) + length(strings[i * 2 + 1])
+                    + state.getAlertWindow().checkpointSize();
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            writeStates(buffer, states, strings);
+            buffer.force();
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return states.size();
+    }
+
+    private static void writeStates(MappedByteBuffer buffer, IntObjectMap<DeviceState> states, byte[][] strings) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(states.size());
+        buffer.putLong(System.currentTimeMillis());
+        for (int i = 0; i < states.size(); i++) {
+            DeviceState state = states.valueAt(i);
+            int start = buffer.position();
+            buffer.putInt(0); // 记录长度，写完后回填
+            buffer.putInt(state.getDeviceId());
+            buffer.putLong(state.getLastSeenSecond());
+            state.getWindow().writeLevels(buffer);
+            putString(buffer, strings[i * 2]);
+            putString(buffer, strings[i * 2 + 1]);
+            buffer.put((byte) state.getAlertState().getState().ordinal());
+            buffer.putLong(state.getAlertState().getLastNotifyMillis());
+            state.getAlertWindow().writeBuckets(buffer);
+            buffer.putInt(start, buffer.position() - start - 4);
+        }
+    }
+
+    // 从检查点文件恢复设备状态到 out（由接收线程在开始接收前调用）
+    // 只恢复满足 filter 的设备；最近收到日志的时间不晚于 expireSecond 的设备视为已过期；
+    // out 中已有同一设备时保留较新的一份（分区数变化后，同一设备可能出现在多个检查点文件中）
+    // 返回恢复的设备数；文件格式不匹配时抛出 IOException
+    public static int restore(Path file, IntPredicate filter, long expireSecond,
+                              IntFunction<DeviceState> factory, IntObjectMap<DeviceState> out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+            }
+            int count = buffer.getInt();
+            buffer.getLong(); // 保存时间，目前仅用于排查
+
+            int restored = 0;
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                int next = buffer.position() + length;
+                int deviceId = buffer.getInt();
+                long lastSeenSecond = buffer.getLong();
+                DeviceState existing = out.get(deviceId);
+                if (!filter.test(deviceId) || lastSeenSecond <= expireSecond
+                        || (existing != null && existing.getLastSeenSecond() >= lastSeenSecond)) {
+                    buffer.position(next); // 跳过该设备
+                    continue;
+                }
+
+                DeviceState state = factory.apply(deviceId);
+                state.setLastSeenSecond(lastSeenSecond);
+                int size = buffer.getInt();
+                for (int j = 0; j < size; j++) {
+                    state.getWindow().add(buffer.get()); // 窗口容量变小时只保留最近的日志
+                }
+                String timestamp = getString(buffer);
+                String message = getString(buffer);
+                if (timestamp != null) {
+                    state.setLastError(new LogMessage(deviceId, timestamp, "ERROR", message));
+                }
+                if (version >= 2) {
+                    AlertStateMachine.State alertState = AlertStateMachine.State.values()[buffer.get()];
+                    state.getAlertState().restore(alertState, buffer.getLong());
+                    state.getAlertWindow().readBuckets(buffer);
+                }
+                buffer.position(next);
+                out.put(deviceId, state);
+                restored++;
+            }
+            return restored;
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 字符串字段的内容字节数（长度前缀已计入 RECORD_FIXED_SIZE）
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putString(MappedByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,83 @@
+package com.loganalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 单个设备 ERROR/WARN 日志内容的高频项统计（Space-Saving 算法），内存占用固定
+// 最多跟踪 capacity 个不同的（级别, 内容）；计数器已满时新内容替换计数最小的一项并继承其计数，
+// 因此计数是真实值的上界，偏差不超过被替换项的计数；出现次数超过 总数/capacity 的内容一定会被保留
+// add 由接收线程调用，topK 由发布线程调用，两者都在对象锁内完成，每次最多扫描 capacity 个计数器
+public class TopKSketch {
+    private static final int MAX_MESSAGE_LENGTH = 256; // 日志内容超过该长度时截断后再统计，限制单项内存
+
+    private final String[] messages; // 被跟踪的日志内容
+    private final byte[] levels; // 对应的日志级别编码
+    private final long[] counts; // 对应的出现次数
+    private int size = 0; // 已使用的计数器数量
+
+    public TopKSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Sketch capacity must be positive: " + capacity);
+        }
+        this.messages = new String[capacity];
+        this.levels = new byte[capacity];
+        this.counts = new long[capacity];
+    }
+
+    // 记录一条日志内容
+    public synchronized void add(byte level, String message) {
+        if (message == null) {
+            return;
+        }
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH);
+        }
+
+        // 已跟踪的内容直接计数，同时找出计数最小的一项以备替换
+        int min = 0;
+        for (int i = 0; i < size; i++) {
+            if (levels[i] == level && messages[i].equals(message)) {
+                counts[i]++;
+                return;
+            }
+            if (counts[i] < counts[min]) {
+                min = i;
+            }
+        }
+
+        if (size < messages.length) {
+            messages[size] = message;
+            levels[size] = level;
+            counts[size] = 1;
+            size++;
+            return;
+        }
+
+        // 计数器已满：替换计数最小的一项
+        messages[min] = message;
+        levels[min] = level;
+        counts[min]++;
+    }
+
+    // 返回出现次数最多的 k 项，按次数从高到低排列
+    public synchronized List<MessageCount> topK(int k) {
+        int n = Math.min(k, size);
+        List<MessageCount> result = new ArrayList<>(n);
+        long[] taken = new long[(size + 63) / 64]; // 已选出的计数器
+        for (int j = 0; j < n; j++) {
+            int best = -1;
+            for (int i = 0; i < size; i++) {
+                if ((taken[i >> 6] & (1L << i)) == 0 && (best < 0 || counts[i] > counts[best])) {
+                    best = i;
+                }
+            }
+            taken[best >> 6] |= 1L << best;
+            result.add(new MessageCount(levelName(levels[best]), messages[best], counts[best]));
+        }
+        return result;
+    }
+
+    private static String levelName(byte level) {
+        return level == DeviceWindow.LEVEL_ERROR ? "ERROR" : level == DeviceWindow.LEVEL_WARN ? "WARN" : "INFO";
+    }
+}
@@ -0,0 +1,61 @@
+package com.loganalyzer;
+
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import jakarta.jms.Session;
+import org.apache.activemq.ActiveMQConnectionFactory;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+// 分析器基准测试的公共工具：嵌入式 broker、丢弃输出消息的消费者、测试数据
+final class AnalyzerBenchmarkSupport {
+    // 进程内嵌入式 broker，不持久化，第一个连接建立时自动启动
+    static final String BROKER_URL = "vm://log-bench?broker.persistent=false&broker.useJmx=false";
+
+    private static final String[] LOG_LEVELS = {
+            "INFO", "INFO", "INFO", "INFO", "INFO", "INFO", "INFO", "INFO", "INFO",
+            "WARN", "WARN",
+            "ERROR"
+    }; // 与 LogProducer 的级别分布一致
+    private static final String[] LOG_MESSAGES = {"系统状态正常", "磁盘空间不足", "数据库连接失败"};
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private AnalyzerBenchmarkSupport() {
+    }
+
+    // 分析器每发布一条结果都会打印到标准输出，测量时丢弃这些输出，避免终端 I/O 干扰结果
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    // 消费并丢弃分析结果和告警，避免嵌入式 broker 中的消息无限堆积
+    static Connection startDrain() throws JMSException {
+        Connection connection = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.createConsumer(session.createQueue("AnalysisQueue")).setMessageListener(message -> { });
+        session.createConsumer(session.createQueue("AlertQueue")).setMessageListener(message -> { });
+        connection.start();
+        return connection;
+    }
+
+    // 创建与 LogAnalyzer 配置相同、窗口大小为 windowSize 的设备状态
+    static DeviceState newDeviceState(int deviceId, int windowSize) {
+        return LogAnalyzer.newDeviceState(deviceId, windowSize);
+    }
+
+    // 生成 count 条随机日志，设备ID在 [1, deviceCount] 内轮转，时间戳为当前时间
+    static LogMessage[] randomLogs(int count, int deviceCount, long seed) {
+        Random random = new Random(seed);
+        String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
+        LogMessage[] logs = new LogMessage[count];
+        for (int i = 0; i < count; i++) {
+            logs[i] = new LogMessage(i % deviceCount + 1, timestamp,
+                    LOG_LEVELS[random.nextInt(LOG_LEVELS.length)], LOG_MESSAGES[random.nextInt(LOG_MESSAGES.length)]);
+        }
+        return logs;
+    }
+}
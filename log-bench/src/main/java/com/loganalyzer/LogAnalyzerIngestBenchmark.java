@@ -0,0 +1,71 @@
+package com.loganalyzer;
+
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// 分析器接收路径：解析日志 JSON、处理一条日志（窗口、告警窗口、高频项统计、告警判定）、单独的告警判定
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogAnalyzerIngestBenchmark {
+    private static final int LOG_COUNT = 4096; // 预先生成的日志条数，循环使用
+
+    @Param({"100", "10000"})
+    public int deviceCount;
+
+    private Connection drain;
+    private LogAnalyzer analyzer;
+    private DeviceState[] states;
+    private LogMessage[] logs;
+    private String[] jsonLogs;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JMSException {
+        AnalyzerBenchmarkSupport.silenceStdout();
+        drain = AnalyzerBenchmarkSupport.startDrain();
+        analyzer = new LogAnalyzer(AnalyzerBenchmarkSupport.BROKER_URL, 0, 1);
+        states = new DeviceState[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            states[i] = AnalyzerBenchmarkSupport.newDeviceState(i + 1, 100);
+            analyzer.registerDevice(states[i]);
+        }
+    }
+
+    // 每轮重新生成日志，时间戳保持在告警窗口内
+    @Setup(Level.Iteration)
+    public void generateLogs() {
+        logs = AnalyzerBenchmarkSupport.randomLogs(LOG_COUNT, deviceCount, 42);
+        jsonLogs = new String[LOG_COUNT];
+        for (int i = 0; i < LOG_COUNT; i++) {
+            jsonLogs[i] = logs[i].toJson();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws JMSException {
+        analyzer.close();
+        drain.close();
+    }
+
+    @Benchmark
+    public LogMessage parseLogMessage() {
+        return analyzer.parseLogMessage(jsonLogs[next++ & (LOG_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public void processLogMessage() throws JMSException {
+        analyzer.processLogMessage(logs[next++ & (LOG_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public void checkAndPublishAlerts() throws JMSException {
+        analyzer.checkAndPublishAlerts(states[next++ % deviceCount]);
+    }
+}
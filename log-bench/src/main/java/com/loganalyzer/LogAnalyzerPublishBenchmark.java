@@ -0,0 +1,60 @@
+package com.loganalyzer;
+
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// 分析器发布路径：一次发布全部设备的分析结果（生成结果、JSON 编码、发送到嵌入式 broker）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogAnalyzerPublishBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int deviceCount;
+
+    @Param({"100", "1000"})
+    public int windowSize; // 每个设备的滑动窗口大小（N）
+
+    private Connection drain;
+    private LogAnalyzer analyzer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JMSException {
+        AnalyzerBenchmarkSupport.silenceStdout();
+        drain = AnalyzerBenchmarkSupport.startDrain();
+        analyzer = new LogAnalyzer(AnalyzerBenchmarkSupport.BROKER_URL, 0, 1);
+
+        // 每个设备填满窗口
+        LogMessage[] logs = AnalyzerBenchmarkSupport.randomLogs(windowSize, 1, 42);
+        for (int i = 0; i < deviceCount; i++) {
+            DeviceState state = AnalyzerBenchmarkSupport.newDeviceState(i + 1, windowSize);
+            for (LogMessage log : logs) {
+                byte level = DeviceWindow.levelCode(log.getLog_level());
+                state.getWindow().add(level);
+                if (level == DeviceWindow.LEVEL_ERROR) {
+                    state.setLastError(log);
+                } else if (level == DeviceWindow.LEVEL_WARN) {
+                    state.getTopMessages().add(level, log.getMessage());
+                }
+            }
+            analyzer.registerDevice(state);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws JMSException {
+        analyzer.close();
+        drain.close();
+    }
+
+    // 发布一轮（只有一个时间片时包含全部设备）
+    @Benchmark
+    public void publishAnalysisResults() throws JMSException {
+        analyzer.publishAnalysisResults(0, 1);
+    }
+}
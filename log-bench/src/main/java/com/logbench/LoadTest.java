@@ -0,0 +1,250 @@
+package com.logbench;
+
+import com.loganalyzer.LogAnalyzer;
+import com.logmonitor.LatencyHistogram;
+import com.logmonitor.LogMonitor;
+import com.logproducer.LogProducer;
+import org.apache.activemq.broker.BrokerService;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+// 端到端压测：在进程内启动嵌入式 ActiveMQ broker、LogAnalyzer、LogMonitor，逐档增加 LogProducer 设备数，
+// 每档输出持续吞吐、分析器到达延迟、告警时延和 /api/monitor 响应时间，用于找出饱和点，不需要外部服务
+//
+// 参数（均可省略）：初始设备数 每档增加的设备数 档数 每台设备的发送间隔(ms) 每档持续秒数 分析工作线程数
+//   mvn -B compile exec:java@load-test -Dload.args="100 100 5 10 20 1"
+public class LoadTest {
+    private static final String BROKER_NAME = "loadtest";
+    private static final String BROKER_URL = "vm://" + BROKER_NAME + "?create=false"; // 连接进程内已启动的 broker
+
+    private static final int INITIAL_DEVICES = 100; // 第一档的设备数
+    private static final int DEVICE_STEP = 100; // 每档增加的设备数
+    private static final int STEPS = 5; // 最多加压的档数
+    private static final int INTERVAL_MS = 10; // 每台设备每隔多少ms发送一条日志
+    private static final int STEP_SECONDS = 20; // 每档持续的秒数
+    private static final int ANALYZER_WORKERS = 1; // 分析工作线程（分区）数
+    private static final int FAULTY_DEVICES = 5; // 每档前半段只发送 ERROR 日志的设备数，用于产生告警、测量告警时延
+    private static final int POLL_INTERVAL_MS = 200; // 请求 /api/monitor 的间隔
+    private static final double SATURATION_RATIO = 0.95; // 处理速率低于发送速率的该比例即视为饱和，停止加压
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000; // 停止时等待每个线程退出的最长时间（分析器最多等待一个发布周期）
+
+    private final int initialDevices;
+    private final int deviceStep;
+    private final int steps;
+    private final int intervalMillis;
+    private final int stepSeconds;
+    private final int analyzerWorkers;
+
+    private final PrintStream report = System.out; // 压测报告输出；各组件逐条打印的日志被丢弃
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final LatencyHistogram monitorResponseTime = new LatencyHistogram(); // /api/monitor 响应时间（微秒）
+
+    private BrokerService broker;
+    private LogMonitor monitor;
+    private final List<LogAnalyzer> analyzers = new ArrayList<>();
+    private final List<LogProducer> producers = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>(); // 分析器和设备的线程，停止时等待其退出
+
+    public LoadTest(int initialDevices, int deviceStep, int steps, int intervalMillis, int stepSeconds, int analyzerWorkers) {
+        this.initialDevices = initialDevices;
+        this.deviceStep = deviceStep;
+        this.steps = steps;
+        this.intervalMillis = intervalMillis;
+        this.stepSeconds = stepSeconds;
+        this.analyzerWorkers = analyzerWorkers;
+    }
+
+    public void run() throws Exception {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            start();
+            report.println("压测开始：每台设备每 " + intervalMillis + " ms 发送一条日志，每档 " + stepSeconds + " 秒，分析工作线程 " + analyzerWorkers + " 个");
+            report.println(String.format("%4s %8s %12s %12s %12s %10s %22s %22s %8s %24s",
+                    "档位", "设备数", "目标(条/s)", "发送(条/s)", "处理(条/s)", "积压(条)",
+                    "到达延迟p50/p99(ms)", "告警时延p50/p99(ms)", "告警数", "/api/monitor p50/p99(ms)"));
+
+            for (int step = 1; step <= steps; step++) {
+                addProducers(step == 1 ? initialDevices : deviceStep);
+                if (!runStep(step)) {
+                    report.println("处理速率低于发送速率的 " + Math.round(SATURATION_RATIO * 100) + "%，已饱和，停止加压");
+                    break;
+                }
+            }
+        } finally {
+            shutdown();
+            System.setOut(report);
+        }
+    }
+
+    // 启动嵌入式 broker、监控器和分析器
+    private void start() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName(BROKER_NAME);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        monitor = new LogMonitor(BROKER_URL, 0);
+        monitor.startMonitoring();
+
+        for (int i = 0; i < analyzerWorkers; i++) {
+            LogAnalyzer analyzer = new LogAnalyzer(BROKER_URL, i, analyzerWorkers);
+            analyzers.add(analyzer);
+            Thread thread = new Thread(() -> {
+                try {
+                    analyzer.startAnalyzing();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "log-analyzer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    // 增加 count 台设备，每台设备一个线程
+    private void addProducers(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            LogProducer producer = new LogProducer(BROKER_URL, producers.size() + 1, intervalMillis);
+            producers.add(producer);
+            Thread thread = new Thread(producer::startProducing, "log-producer-" + producers.size());
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    // 运行一档负载并输出统计，返回是否未饱和
+    private boolean runStep(int step) throws Exception {
+        for (LogAnalyzer analyzer : analyzers) {
+            analyzer.getArrivalLatency().reset();
+        }
+        monitor.getAlertLatency().reset();
+        monitorResponseTime.reset();
+        long sentBefore = sentCount();
+        long processedBefore = processedCount();
+        long start = System.nanoTime();
+        long end = start + stepSeconds * 1_000_000_000L;
+
+        // 前半段部分设备持续发送 ERROR 日志触发告警，后半段恢复正常使告警解除
+        setFaulty(true);
+        boolean recovered = false;
+        while (System.nanoTime() < end) {
+            if (!recovered && System.nanoTime() - start > (end - start) / 2) {
+                setFaulty(false);
+                recovered = true;
+            }
+            pollMonitor();
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+        setFaulty(false);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long sent = sentCount();
+        long processed = processedCount();
+        double sentRate = (sent - sentBefore) / seconds;
+        double processedRate = (processed - processedBefore) / seconds;
+        double targetRate = producers.size() * 1000.0 / intervalMillis;
+
+        // 多个分析工作线程时取最差的一个
+        long lagP50 = 0;
+        long lagP99 = 0;
+        for (LogAnalyzer analyzer : analyzers) {
+            lagP50 = Math.max(lagP50, analyzer.getArrivalLatency().getPercentile(50));
+            lagP99 = Math.max(lagP99, analyzer.getArrivalLatency().getPercentile(99));
+        }
+        LatencyHistogram alertLatency = monitor.getAlertLatency();
+
+        report.println(String.format("%4d %8d %12.0f %12.0f %12.0f %10d %22s %22s %8d %24s",
+                step, producers.size(), targetRate, sentRate, processedRate, sent - processed,
+                millis(lagP50) + " / " + millis(lagP99),
+                millis(alertLatency.getPercentile(50)) + " / " + millis(alertLatency.getPercentile(99)),
+                alertLatency.getCount(),
+                millis(monitorResponseTime.getPercentile(50)) + " / " + millis(monitorResponseTime.getPercentile(99))));
+        return processedRate >= sentRate * SATURATION_RATIO;
+    }
+
+    private void setFaulty(boolean faulty) {
+        for (int i = 0; i < Math.min(FAULTY_DEVICES, producers.size()); i++) {
+            producers.get(i).setFaulty(faulty);
+        }
+    }
+
+    // 请求一次 /api/monitor，记录响应时间
+    private void pollMonitor() {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + monitor.getHttpPort() + "/api/monitor")).GET().build();
+        long start = System.nanoTime();
+        try {
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            monitorResponseTime.record((System.nanoTime() - start) / 1000);
+        } catch (Exception e) {
+            report.println("请求 /api/monitor 失败：" + e);
+        }
+    }
+
+    private long sentCount() {
+        long count = 0;
+        for (LogProducer producer : producers) {
+            count += producer.getSentCount();
+        }
+        return count;
+    }
+
+    private long processedCount() {
+        long count = 0;
+        for (LogAnalyzer analyzer : analyzers) {
+            count += analyzer.getProcessedCount();
+        }
+        return count;
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.1f", micros / 1000.0);
+    }
+
+    // 先停止设备和分析器并等待其线程退出，再关闭连接和 broker，避免关闭过程中仍在收发消息
+    private void shutdown() throws Exception {
+        for (LogProducer producer : producers) {
+            producer.stop();
+        }
+        for (LogAnalyzer analyzer : analyzers) {
+            analyzer.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(SHUTDOWN_TIMEOUT_MS);
+        }
+        for (LogAnalyzer analyzer : analyzers) {
+            analyzer.close();
+        }
+        if (monitor != null) {
+            monitor.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try {
+            new LoadTest(
+                    args.length > 0 ? Integer.parseInt(args[0]) : INITIAL_DEVICES,
+                    args.length > 1 ? Integer.parseInt(args[1]) : DEVICE_STEP,
+                    args.length > 2 ? Integer.parseInt(args[2]) : STEPS,
+                    args.length > 3 ? Integer.parseInt(args[3]) : INTERVAL_MS,
+                    args.length > 4 ? Integer.parseInt(args[4]) : STEP_SECONDS,
+                    args.length > 5 ? Integer.parseInt(args[5]) : ANALYZER_WORKERS).run();
+        } finally {
+            System.exit(0); // ActiveMQ 的部分线程不是守护线程
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.logbench;
+
+import com.loganalyzer.AlertMessage;
+import com.loganalyzer.AnalysisResult;
+import com.loganalyzer.JsonCodec;
+import com.loganalyzer.LogMessage;
+import com.loganalyzer.MessageCount;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 三个消息模型的 JSON 编解码（分析器侧的类；监控端 AnalysisResult 的解码单独测量）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelJsonBenchmark {
+    private LogMessage logMessage;
+    private AnalysisResult analysisResult;
+    private AlertMessage alertMessage;
+    private String logJson;
+    private String analysisJson;
+    private String alertJson;
+
+    @Setup
+    public void setUp() {
+        logMessage = new LogMessage(42, "2025-01-01 12:00:00", "ERROR", "数据库连接失败");
+        analysisResult = new AnalysisResult(42, 12.5, 20.25, "2025-01-01 12:00:00", "数据库连接失败",
+                "2025-01-01 12:00:01",
+                List.of(new MessageCount("ERROR", "数据库连接失败", 12), new MessageCount("WARN", "磁盘空间不足", 8)),
+                35.5, false);
+        alertMessage = new AlertMessage(42, "2025-01-01 12:00:01", "设备 42 在最近 10 秒内 ERROR 日志占比超过 50%", "RAISED");
+        logJson = logMessage.toJson();
+        analysisJson = analysisResult.toJson();
+        alertJson = alertMessage.toJson();
+    }
+
+    @Benchmark
+    public String logMessageToJson() {
+        return logMessage.toJson();
+    }
+
+    // LogMessage 没有 fromJson，分析器通过 JsonCodec 解析
+    @Benchmark
+    public LogMessage logMessageFromJson() throws IOException {
+        return JsonCodec.readLogMessage(logJson);
+    }
+
+    @Benchmark
+    public String analysisResultToJson() {
+        return analysisResult.toJson();
+    }
+
+    @Benchmark
+    public AnalysisResult analysisResultFromJson() {
+        return AnalysisResult.fromJson(analysisJson);
+    }
+
+    @Benchmark
+    public com.logmonitor.AnalysisResult monitorAnalysisResultFromJson() {
+        return com.logmonitor.AnalysisResult.fromJson(analysisJson);
+    }
+
+    @Benchmark
+    public String alertMessageToJson() {
+        return alertMessage.toJson();
+    }
+
+    @Benchmark
+    public AlertMessage alertMessageFromJson() {
+        return AlertMessage.fromJson(alertJson);
+    }
+}
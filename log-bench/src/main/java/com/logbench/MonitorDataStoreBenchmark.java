@@ -0,0 +1,69 @@
+package com.logbench;
+
+import com.logmonitor.AlertMessage;
+import com.logmonitor.AnalysisResult;
+import com.logmonitor.MonitorDataStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+// 监控端数据存储的写入与查询，deviceCount 为存储中的设备数
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MonitorDataStoreBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int deviceCount;
+
+    private MonitorDataStore store;
+    private AnalysisResult[] results;
+    private AlertMessage[] alerts; // 每个设备依次触发、持续、解除各一条
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        results = new AnalysisResult[deviceCount];
+        alerts = new AlertMessage[deviceCount * 3];
+        for (int i = 0; i < deviceCount; i++) {
+            int deviceId = i + 1;
+            results[i] = new AnalysisResult(deviceId, 12.5, 20.25, "2025-01-01 12:00:00", "数据库连接失败",
+                    "2025-01-01 12:00:01", new ArrayList<>(), 35.5, false);
+            alerts[i * 3] = new AlertMessage(deviceId, "2025-01-01 12:00:01", "ERROR占比超过50%", AlertMessage.STATE_RAISED);
+            alerts[i * 3 + 1] = new AlertMessage(deviceId, "2025-01-01 12:00:11", "ERROR占比持续超过50%", AlertMessage.STATE_SUSTAINED);
+            alerts[i * 3 + 2] = new AlertMessage(deviceId, "2025-01-01 12:00:21", "ERROR占比已恢复正常", AlertMessage.STATE_CLEARED);
+        }
+    }
+
+    // 每轮使用新的存储（每个设备已有一条分析结果），趋势数据的环形缓冲从初始大小开始，各轮之间的测量条件一致
+    @Setup(Level.Iteration)
+    public void resetStore() {
+        store = new MonitorDataStore();
+        for (AnalysisResult result : results) {
+            store.addAnalysisResult(result);
+        }
+    }
+
+    @Benchmark
+    public void addAnalysisResult() {
+        store.addAnalysisResult(results[next++ % deviceCount]);
+    }
+
+    @Benchmark
+    public void addAlertMessage() {
+        store.addAlertMessage(alerts[next++ % alerts.length]);
+    }
+
+    @Benchmark
+    public AnalysisResult getLastAnalysisResultsHistory() {
+        return store.getLastAnalysisResultsHistory(next++ % deviceCount + 1);
+    }
+
+    @Benchmark
+    public int[] getDeviceIds() {
+        return store.getDeviceIds();
+    }
+}
@@ -1,17 +1,24 @@
 package com.logmonitor;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 public class AlertMessage {
+    public static final String STATE_RAISED = "RAISED"; // 新触发的告警
+    public static final String STATE_SUSTAINED = "SUSTAINED"; // 告警持续中的提醒
+    public static final String STATE_CLEARED = "CLEARED"; // 告警解除
+
     private int device_id; // 设备ID
     private String alert_message; // 告警信息
     private String timestamp; // 告警时间戳
+    private String alert_state; // 告警状态：RAISED（触发）/SUSTAINED（持续提醒）/CLEARED（解除）
 
     public AlertMessage(int device_id, String timestamp, String alert_message) {
+        this(device_id, timestamp, alert_message, STATE_RAISED);
+    }
+
+    public AlertMessage(int device_id, String timestamp, String alert_message, String alert_state) {
         this.device_id = device_id;
         this.alert_message = alert_message;
         this.timestamp = timestamp;
+        this.alert_state = alert_state;
     }
 
     // Getter 和 Setter 方法
@@ -39,28 +46,24 @@ public class AlertMessage {
         this.timestamp = timestamp;
     }
 
-    // 将对象转换为JSON字符串
+    public String getAlert_state() {
+        return alert_state;
+    }
+
+    public void setAlert_state(String alert_state) {
+        this.alert_state = alert_state;
+    }
+
+    // 将对象转换为JSON字符串（字符串字段会被正确转义）
     public String toJson() {
-        return String.format(
-                "{\"device_id\":%d,\"alert_message\":\"%s\",\"timestamp\":\"%s\"}",
-                this.device_id, this.alert_message, this.timestamp
-        );
+        return JsonCodec.writeAlertMessage(this);
     }
 
     // 从JSON字符串解析为AlertMessage对象
     public static AlertMessage fromJson(String jsonMessage) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            // 使用Jackson将JSON字符串解析为JsonNode对象
-            JsonNode jsonNode = objectMapper.readTree(jsonMessage);
-
-            // 提取字段值
-            int device_id = jsonNode.get("device_id").asInt();
-            String alert_message = jsonNode.get("alert_message").asText();
-            String timestamp = jsonNode.get("timestamp").asText();
-
-            // 创建并返回AlertMessage对象
-            return new AlertMessage(device_id, timestamp, alert_message);
+            // 使用流式解析器直接读取字段
+            return JsonCodec.readAlertMessage(jsonMessage);
         } catch (Exception e) {
             // 捕获任何异常并抛出自定义异常
             throw new IllegalArgumentException("Failed to parse AlertMessage from JSON: " + jsonMessage, e);
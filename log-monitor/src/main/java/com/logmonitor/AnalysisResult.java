@@ -1,7 +1,7 @@
 package com.logmonitor;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AnalysisResult {
     private int device_id; // 设备ID
@@ -10,15 +10,24 @@ public class AnalysisResult {
     private String last_error_timestamp; // 最近一次 ERROR 时间戳
     private String last_error_message; // 最近一次 ERROR 的日志内容
     private String analysis_timestamp; // 分析报告发布时间
-
+    private List<MessageCount> top_messages; // 出现次数最多的 ERROR/WARN 日志内容（按次数从高到低）
+    private double ingest_rate; // 最近一个发布周期内的日志接收速率（条/秒）
+    private boolean degraded; // 分析器是否处于降级模式（INFO 日志抽样统计，占比为估计值）
 
     public AnalysisResult(int device_id, double error_percentage, double warn_percentage, String last_error_timestamp, String last_error_message, String analysis_timestamp) {
+        this(device_id, error_percentage, warn_percentage, last_error_timestamp, last_error_message, analysis_timestamp, new ArrayList<>(), 0, false);
+    }
+
+    public AnalysisResult(int device_id, double error_percentage, double warn_percentage, String last_error_timestamp, String last_error_message, String analysis_timestamp, List<MessageCount> top_messages, double ingest_rate, boolean degraded) {
         this.device_id = device_id;
         this.error_percentage = error_percentage;
         this.warn_percentage = warn_percentage;
         this.last_error_timestamp = last_error_timestamp;
         this.last_error_message = last_error_message;
         this.analysis_timestamp = analysis_timestamp;
+        this.top_messages = top_messages;
+        this.ingest_rate = ingest_rate;
+        this.degraded = degraded;
     }
 
     // Getter 和 Setter 方法
@@ -70,31 +79,40 @@ public class AnalysisResult {
         this.analysis_timestamp = analysis_timestamp;
     }
 
-    // 将对象转换为JSON字符串
+    public List<MessageCount> getTop_messages() {
+        return top_messages;
+    }
+
+    public void setTop_messages(List<MessageCount> top_messages) {
+        this.top_messages = top_messages;
+    }
+
+    public double getIngest_rate() {
+        return ingest_rate;
+    }
+
+    public void setIngest_rate(double ingest_rate) {
+        this.ingest_rate = ingest_rate;
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
+
+    // 将对象转换为JSON字符串（字符串字段会被正确转义）
     public String toJson() {
-        return String.format(
-                "{\"device_id\":%d,\"error_percentage\":%.2f,\"warn_percentage\":%.2f,\"last_error_timestamp\":\"%s\",\"last_error_message\":\"%s\",\"analysis_timestamp\":\"%s\"}",
-                this.device_id, this.error_percentage, this.warn_percentage, this.last_error_timestamp, this.last_error_message, this.analysis_timestamp
-        );
+        return JsonCodec.writeAnalysisResult(this);
     }
 
     // 从JSON字符串解析为AnalysisResult对象
     public static AnalysisResult fromJson(String jsonMessage) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            // 使用Jackson将JSON字符串解析为JsonNode对象
-            JsonNode jsonNode = objectMapper.readTree(jsonMessage);
-
-            // 提取字段值
-            int device_id = jsonNode.get("device_id").asInt();
-            double error_percentage = jsonNode.get("error_percentage").asDouble();
-            double warn_percentage = jsonNode.get("warn_percentage").asDouble();
-            String last_error_timestamp = jsonNode.get("last_error_timestamp").asText();
-            String last_error_message = jsonNode.get("last_error_message").asText();
-            String analysis_timestamp = jsonNode.get("analysis_timestamp").asText();
-
-            // 创建并返回AnalysisResult对象
-            return new AnalysisResult(device_id, error_percentage, warn_percentage, last_error_timestamp, last_error_message, analysis_timestamp);
+            // 使用流式解析器直接读取字段
+            return JsonCodec.readAnalysisResult(jsonMessage);
         } catch (Exception e) {
             // 捕获任何异常并抛出自定义异常
             throw new IllegalArgumentException("Failed to parse AnalysisResult from JSON: " + jsonMessage, e);
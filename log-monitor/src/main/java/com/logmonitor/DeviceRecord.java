@@ -0,0 +1,64 @@
+package com.logmonitor;
+
+import java.util.ArrayDeque;
+
+// 单个设备在监控端保存的全部数据，由 MonitorDataStore 在锁内访问
+// 只保留最新的分析结果、固定容量的趋势数据和最近 ALERT_HISTORY_SIZE 条告警，内存占用不随运行时间增长
+public class DeviceRecord {
+    private static final int ALERT_HISTORY_SIZE = 100; // 保留的最近告警条数
+
+    private final int deviceId; // 设备ID
+    private AnalysisResult lastAnalysisResult; // 最新的分析结果
+    private final MetricHistory history = new MetricHistory(); // 多分辨率的趋势数据
+    private final ArrayDeque<AlertMessage> alertMessages = new ArrayDeque<>(); // 最近的告警信息（从旧到新）
+    private int alertCount = 0; // 触发（RAISED）告警的次数
+    private long lastUpdateMillis; // 最近一次收到该设备数据的时间
+
+    public DeviceRecord(int deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public AnalysisResult getLastAnalysisResult() {
+        return lastAnalysisResult;
+    }
+
+    public void setLastAnalysisResult(AnalysisResult lastAnalysisResult) {
+        this.lastAnalysisResult = lastAnalysisResult;
+    }
+
+    public MetricHistory getHistory() {
+        return history;
+    }
+
+    public ArrayDeque<AlertMessage> getAlertMessages() {
+        return alertMessages;
+    }
+
+    // 添加告警，超过 ALERT_HISTORY_SIZE 条时丢弃最旧的
+    public void addAlertMessage(AlertMessage alert) {
+        if (alertMessages.size() >= ALERT_HISTORY_SIZE) {
+            alertMessages.pollFirst();
+        }
+        alertMessages.addLast(alert);
+    }
+
+    public int getAlertCount() {
+        return alertCount;
+    }
+
+    public void incrementAlertCount() {
+        alertCount++;
+    }
+
+    public long getLastUpdateMillis() {
+        return lastUpdateMillis;
+    }
+
+    public void setLastUpdateMillis(long lastUpdateMillis) {
+        this.lastUpdateMillis = lastUpdateMillis;
+    }
+}
@@ -0,0 +1,167 @@
+package com.logmonitor;
+
+import java.util.Arrays;
+
+// 以 int 为键的开放寻址哈希表，键不装箱
+// 哈希表只保存 键 和 值在密集数组中的位置；值按插入顺序连续存放在密集数组中，删除时用最后一个元素填补空位，
+// 因此遍历全部设备时顺序访问一个连续数组（valueAt(0..size-1)），不需要跳过空槽
+// 线性探测，负载因子不超过 1/2；删除采用后移法，不留墓碑。非线程安全
+public class IntObjectMap<V> {
+    private static final int MIN_CAPACITY = 16; // 删除后收缩时保留的最小容量
+
+    private int[] tableKeys; // 哈希表：键
+    private int[] tableSlots; // 哈希表：值在密集数组中的下标 + 1，0 表示空槽
+    private int mask;
+
+    private int[] keys; // 密集数组：键
+    private Object[] values; // 密集数组：值
+    private int size = 0;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        tableKeys = new int[capacity];
+        tableSlots = new int[capacity];
+        mask = capacity - 1;
+        keys = new int[Math.max(4, expectedSize)];
+        values = new Object[keys.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(int key) {
+        int slot = findSlot(key);
+        return slot < 0 ? null : valueAt(tableSlots[slot] - 1);
+    }
+
+    public boolean containsKey(int key) {
+        return findSlot(key) >= 0;
+    }
+
+    // 插入或替换，返回原来的值
+    public V put(int key, V value) {
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            int index = tableSlots[slot] - 1;
+            V previous = valueAt(index);
+            values[index] = value;
+            return previous;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        if (size * 2 > tableKeys.length) {
+            rehash(tableKeys.length * 2);
+        } else {
+            insertSlot(key, size);
+        }
+        return null;
+    }
+
+    public V remove(int key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        return removeAt(tableSlots[slot] - 1);
+    }
+
+    // 按密集数组下标删除，最后一个元素移到该位置；倒序遍历时可以边遍历边删除
+    public V removeAt(int index) {
+        V removed = valueAt(index);
+        deleteSlot(findSlot(keys[index]));
+
+        int last = size - 1;
+        if (index != last) {
+            keys[index] = keys[last];
+            values[index] = values[last];
+            tableSlots[findSlot(keys[index])] = index + 1;
+        }
+        values[last] = null;
+        size = last;
+
+        // 元素减少到容量的 1/4 以下时收缩，内存随活跃设备数量回落
+        if (keys.length > MIN_CAPACITY && size < keys.length / 4) {
+            keys = Arrays.copyOf(keys, keys.length / 2);
+            values = Arrays.copyOf(values, values.length / 2);
+            rehash(tableKeys.length / 2);
+        }
+        return removed;
+    }
+
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    public void clear() {
+        Arrays.fill(tableSlots, 0);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9; // 乘法散列，打散连续的设备ID
+        return h ^ (h >>> 16);
+    }
+
+    private int findSlot(int key) {
+        for (int slot = hash(key) & mask; tableSlots[slot] != 0; slot = (slot + 1) & mask) {
+            if (tableKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insertSlot(int key, int indexPlusOne) {
+        int slot = hash(key) & mask;
+        while (tableSlots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        tableKeys[slot] = key;
+        tableSlots[slot] = indexPlusOne;
+    }
+
+    // 删除一个槽，并把探测链上后续的元素前移，保证查找不会提前遇到空槽
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        for (int next = (slot + 1) & mask; tableSlots[next] != 0; next = (next + 1) & mask) {
+            int home = hash(tableKeys[next]) & mask;
+            // home 不在 (gap, next] 区间内时，该元素可以移到 gap
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                tableKeys[gap] = tableKeys[next];
+                tableSlots[gap] = tableSlots[next];
+                gap = next;
+            }
+        }
+        tableSlots[gap] = 0;
+    }
+
+    private void rehash(int capacity) {
+        tableKeys = new int[capacity];
+        tableSlots = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            insertSlot(keys[i], i + 1);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.logmonitor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// 分析结果、告警消息的 JSON 编解码
+// 读取：使用 Jackson 流式 JsonParser 逐个字段直接取值，不构建 JsonNode 树
+// 写出：复用线程内的 StringBuilder 拼接，字符串字段按 JSON 规范转义
+public final class JsonCodec {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory(); // 线程安全，全局共享
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024; // 复用缓冲区的最大保留容量
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private JsonCodec() {
+    }
+
+    // ---------------- AnalysisResult ----------------
+
+    public static AnalysisResult readAnalysisResult(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            startObject(parser);
+            return readAnalysisResultFields(parser);
+        }
+    }
+
+    // 读取分析快照 {"snapshot_type":"full|delta","results":[...]}，结果追加到 out，返回快照类型
+    public static String readAnalysisSnapshot(String json, List<AnalysisResult> out) throws IOException {
+        String snapshotType = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("snapshot_type".equals(field)) {
+                    snapshotType = parser.getValueAsString();
+                } else if ("results".equals(field) && token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                        out.add(readAnalysisResultFields(parser));
+                    }
+                    if (token != JsonToken.END_ARRAY) {
+                        throw new IOException("JSON object expected in analysis snapshot");
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return snapshotType;
+    }
+
+    // 从当前对象的第一个字段开始读取，直到对象结束
+    private static AnalysisResult readAnalysisResultFields(JsonParser parser) throws IOException {
+        int deviceId = 0;
+        double errorPercentage = 0;
+        double warnPercentage = 0;
+        String lastErrorTimestamp = null;
+        String lastErrorMessage = null;
+        String analysisTimestamp = null;
+        List<MessageCount> topMessages = new ArrayList<>(); // 旧版本的分析结果没有该字段
+        double ingestRate = 0; // 同上
+        boolean degraded = false; // 同上
+        int found = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "device_id":
+                    deviceId = parser.getValueAsInt();
+                    found |= 1;
+                    break;
+                case "error_percentage":
+                    errorPercentage = parser.getValueAsDouble();
+                    found |= 2;
+                    break;
+                case "warn_percentage":
+                    warnPercentage = parser.getValueAsDouble();
+                    found |= 4;
+                    break;
+                case "last_error_timestamp":
+                    lastErrorTimestamp = parser.getValueAsString();
+                    found |= 8;
+                    break;
+                case "last_error_message":
+                    lastErrorMessage = parser.getValueAsString();
+                    found |= 16;
+                    break;
+                case "analysis_timestamp":
+                    analysisTimestamp = parser.getValueAsString();
+                    found |= 32;
+                    break;
+                case "top_messages":
+                    readMessageCounts(parser, topMessages);
+                    break;
+                case "ingest_rate":
+                    ingestRate = parser.getValueAsDouble();
+                    break;
+                case "degraded":
+                    degraded = parser.getValueAsBoolean();
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        requireFields(found, 0b111111, "device_id, error_percentage, warn_percentage, last_error_timestamp, last_error_message, analysis_timestamp");
+        return new AnalysisResult(deviceId, errorPercentage, warnPercentage, lastErrorTimestamp, lastErrorMessage, analysisTimestamp, topMessages, ingestRate, degraded);
+    }
+
+    public static String writeAnalysisResult(AnalysisResult result) {
+        StringBuilder sb = buffer();
+        sb.append("{\"device_id\":").append(result.getDevice_id());
+        appendDecimal(sb, "error_percentage", result.getError_percentage());
+        appendDecimal(sb, "warn_percentage", result.getWarn_percentage());
+        appendString(sb, "last_error_timestamp", result.getLast_error_timestamp());
+        appendString(sb, "last_error_message", result.getLast_error_message());
+        appendString(sb, "analysis_timestamp", result.getAnalysis_timestamp());
+        appendMessageCounts(sb, result.getTop_messages());
+        appendDecimal(sb, "ingest_rate", result.getIngest_rate());
+        sb.append(",\"degraded\":").append(result.isDegraded());
+        return sb.append('}').toString();
+    }
+
+    // 读取 [{"count":3,"log_level":"ERROR","message":"..."}, ...]，结果追加到 out
+    private static void readMessageCounts(JsonParser parser, List<MessageCount> out) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String logLevel = null;
+            String message = null;
+            long count = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "log_level":
+                        logLevel = parser.getValueAsString();
+                        break;
+                    case "message":
+                        message = parser.getValueAsString();
+                        break;
+                    case "count":
+                        count = parser.getValueAsLong();
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+            out.add(new MessageCount(logLevel, message, count));
+        }
+    }
+
+    // 写出 ,"top_messages":[...]
+    private static void appendMessageCounts(StringBuilder sb, List<MessageCount> messageCounts) {
+        sb.append(",\"top_messages\":[");
+        if (messageCounts != null) {
+            for (int i = 0; i < messageCounts.size(); i++) {
+                MessageCount messageCount = messageCounts.get(i);
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"count\":").append(messageCount.getCount());
+                appendString(sb, "log_level", messageCount.getLog_level());
+                appendString(sb, "message", messageCount.getMessage());
+                sb.append('}');
+            }
+        }
+        sb.append(']');
+    }
+
+    // ---------------- AlertMessage ----------------
+
+    public static AlertMessage readAlertMessage(String json) throws IOException {
+        int deviceId = 0;
+        String alertMessage = null;
+        String timestamp = null;
+        String alertState = AlertMessage.STATE_RAISED; // 旧版本的告警消息没有状态字段，视为新触发的告警
+        int found = 0;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            startObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "device_id":
+                        deviceId = parser.getValueAsInt();
+                        found |= 1;
+                        break;
+                    case "alert_message":
+                        alertMessage = parser.getValueAsString();
+                        found |= 2;
+                        break;
+                    case "timestamp":
+                        timestamp = parser.getValueAsString();
+                        found |= 4;
+                        break;
+                    case "alert_state":
+                        alertState = parser.getValueAsString();
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+        }
+        requireFields(found, 0b111, "device_id, alert_message, timestamp");
+        return new AlertMessage(deviceId, timestamp, alertMessage, alertState);
+    }
+
+    public static String writeAlertMessage(AlertMessage alert) {
+        StringBuilder sb = buffer();
+        sb.append("{\"device_id\":").append(alert.getDevice_id());
+        appendString(sb, "alert_message", alert.getAlert_message());
+        appendString(sb, "timestamp", alert.getTimestamp());
+        appendString(sb, "alert_state", alert.getAlert_state());
+        return sb.append('}').toString();
+    }
+
+    // ---------------- 工具方法 ----------------
+
+    private static void startObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("JSON object expected");
+        }
+    }
+
+    private static void requireFields(int found, int required, String fieldNames) throws IOException {
+        if ((found & required) != required) {
+            throw new IOException("Missing required field(s), expected: " + fieldNames);
+        }
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            sb = new StringBuilder(256);
+            BUFFER.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    // 写出 ,"name":"value"（value 为 null 时写出 null）
+    private static void appendString(StringBuilder sb, String name, String value) {
+        sb.append(",\"").append(name).append("\":");
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        appendEscaped(sb, value);
+        sb.append('"');
+    }
+
+    // 写出 ,"name":12.34（保留两位小数，不受默认 Locale 影响）
+    private static void appendDecimal(StringBuilder sb, String name, double value) {
+        sb.append(",\"").append(name).append("\":");
+        if (!Double.isFinite(value)) {
+            sb.append('0');
+            return;
+        }
+        long hundredths = Math.round(value * 100);
+        if (hundredths < 0) {
+            sb.append('-');
+            hundredths = -hundredths;
+        }
+        long fraction = hundredths % 100;
+        sb.append(hundredths / 100).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            sb.append(value, start, i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    sb.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    break;
+            }
+            start = i + 1;
+        }
+        sb.append(value, start, length);
+    }
+}
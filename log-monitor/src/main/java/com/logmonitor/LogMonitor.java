@@ -1,27 +1,68 @@
 package com.logmonitor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
 import jakarta.jms.*;
+import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
 
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class LogMonitor {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper(); // 线程安全，全局共享
+
     private MonitorDataStore database = new MonitorDataStore();
+    private final MonitorResponseCache monitorCache = new MonitorResponseCache(database, OBJECT_MAPPER); // /api/monitor 的响应缓存
+    private final MonitorStream stream = new MonitorStream(monitorCache); // /api/stream 推送
 
     // ActiveMQ 配置
     private static final String BROKER_URL = "tcp://localhost:61616";
     private static final String ANALYSIS_QUEUE_NAME = "AnalysisQueue";
     private static final String ALERT_QUEUE_NAME = "AlertQueue";
+    private static final String SNAPSHOT_TYPE_PROPERTY = "snapshot_type"; // 分析快照消息的类型属性：full / delta
+    private static final String PUBLISH_TIME_PROPERTY = "publish_time_us"; // 分析结果消息上携带的发布时间（epoch 微秒）
+    private static final String TRIGGER_TIME_PROPERTY = "trigger_time_us"; // 告警消息上携带的触发日志的发送时间（epoch 微秒）
+    private static final int HTTP_PORT = 8080; // RESTful 接口端口
+
+    private final String brokerUrl; // 连接的 broker 地址
+    private final int httpPort; // RESTful 接口端口，0 表示由系统分配空闲端口
+    private Connection connection;
+    private com.sun.net.httpserver.HttpServer server;
+
+    // 延迟统计（微秒），消息监听线程记录，REST 接口查询
+    private final LatencyHistogram analysisAge = new LatencyHistogram(); // 分析结果从发布到被监控端接收的时延
+    private final LatencyHistogram processingTime = new LatencyHistogram(); // 每条消息的处理耗时
+    private final LatencyHistogram alertLatency = new LatencyHistogram(); // 告警从触发日志发送到被监控端接收的时延
+    private final LatencyHistogram apiResponseTime = new LatencyHistogram(); // /api/monitor 生成响应的耗时
+
+    // 运行指标，消息监听线程写入（同一会话的监听器由同一线程依次调用），/metrics 接口读取
+    private volatile long analysisConsumedCount = 0; // 已接收的分析结果消息数（一条快照计一条）
+    private volatile long alertConsumedCount = 0; // 已接收的告警消息数
+    private volatile long parseFailureCount = 0; // 无法解析的消息数
+    private volatile long notModifiedCount = 0; // /api/monitor 返回 304 的次数（HTTP 服务由单个线程处理请求）
+
+    public LogMonitor() {
+        this(BROKER_URL, HTTP_PORT);
+    }
+
+    // 连接到指定 broker、在指定端口提供接口的监控器（压测使用嵌入式 broker）
+    public LogMonitor(String brokerUrl, int httpPort) {
+        this.brokerUrl = brokerUrl;
+        this.httpPort = httpPort;
+    }
 
     public void startMonitoring() {
         try {
             // 创建连接工厂
-            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
-            Connection connection = connectionFactory.createConnection();
+            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+            connection = connectionFactory.createConnection();
             connection.start();
 
             // 创建会话
@@ -30,30 +71,77 @@ public class LogMonitor {
             // 消费 AnalysisResult 消息
             MessageConsumer analysisConsumer = session.createConsumer(session.createQueue(ANALYSIS_QUEUE_NAME));
             analysisConsumer.setMessageListener(message -> {
-                if (message instanceof TextMessage) {
-                    try {
+                long start = System.nanoTime();
+                try {
+                    analysisConsumedCount++;
+                    recordAnalysisAge(message);
+
+                    // 分析快照：一条消息包含多台设备的结果，整体应用到数据存储
+                    if (message.propertyExists(SNAPSHOT_TYPE_PROPERTY)) {
+                        List<AnalysisResult> results = new ArrayList<>();
+                        String snapshotType;
+                        if (BinaryCodec.isBinary(message)) {
+                            snapshotType = BinaryCodec.readAnalysisSnapshot((BytesMessage) message, results);
+                        } else if (message instanceof TextMessage) {
+                            snapshotType = JsonCodec.readAnalysisSnapshot(((TextMessage) message).getText(), results);
+                        } else {
+                            return;
+                        }
+                        database.addAnalysisResults(results);
+                        int[] deviceIds = new int[results.size()];
+                        for (int i = 0; i < deviceIds.length; i++) {
+                            deviceIds[i] = results.get(i).getDevice_id();
+                        }
+                        stream.publish(deviceIds);
+                        System.out.println("收到分析快照（" + snapshotType + "）: " + results.size() + " 台设备");
+                        return;
+                    }
+
+                    AnalysisResult result;
+                    if (BinaryCodec.isBinary(message)) {
+                        result = BinaryCodec.readAnalysisResult((BytesMessage) message);
+                    } else if (message instanceof TextMessage) {
                         String text = ((TextMessage) message).getText();
-                        AnalysisResult result = AnalysisResult.fromJson(text);
-                        database.addAnalysisResult(result);
-                        System.out.println("收到分析结果: " + result);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                        result = AnalysisResult.fromJson(text);
+                    } else {
+                        return;
                     }
+                    database.addAnalysisResult(result);
+                    stream.publish(new int[]{result.getDevice_id()});
+                    System.out.println("收到分析结果: " + result);
+                } catch (Exception e) {
+                    parseFailureCount++;
+                    e.printStackTrace();
+                } finally {
+                    processingTime.record((System.nanoTime() - start) / 1000);
                 }
             });
 
             // 消费 AlertMessage 消息
             MessageConsumer alertConsumer = session.createConsumer(session.createQueue(ALERT_QUEUE_NAME));
             alertConsumer.setMessageListener(message -> {
-                if (message instanceof TextMessage) {
-                    try {
+                long start = System.nanoTime();
+                try {
+                    alertConsumedCount++;
+                    recordAlertLatency(message);
+
+                    AlertMessage alert;
+                    if (BinaryCodec.isBinary(message)) {
+                        alert = BinaryCodec.readAlertMessage((BytesMessage) message);
+                    } else if (message instanceof TextMessage) {
                         String text = ((TextMessage) message).getText();
-                        AlertMessage alert = AlertMessage.fromJson(text);
-                        database.addAlertMessage(alert);
-                        System.out.println("收到告警消息: " + alert);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                        alert = AlertMessage.fromJson(text);
+                    } else {
+                        return;
                     }
+                    database.addAlertMessage(alert);
+                    stream.publish(new int[]{alert.getDevice_id()});
+                    System.out.println("收到告警消息: " + alert);
+                } catch (Exception e) {
+                    parseFailureCount++;
+                    e.printStackTrace();
+                } finally {
+                    processingTime.record((System.nanoTime() - start) / 1000);
                 }
             });
 
@@ -65,72 +153,230 @@ public class LogMonitor {
         }
     }
 
+    // 记录分析结果消息从发布到接收的时延；一条快照消息计一次
+    private void recordAnalysisAge(Message message) throws JMSException {
+        if (!message.propertyExists(PUBLISH_TIME_PROPERTY)) {
+            return;
+        }
+        Instant now = Instant.now();
+        long nowMicros = now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+        analysisAge.record(nowMicros - message.getLongProperty(PUBLISH_TIME_PROPERTY));
+    }
+
+    // 记录告警从触发它的日志被发送到监控端接收的时延；推进告警状态时产生的告警不携带触发时间，不计入
+    private void recordAlertLatency(Message message) throws JMSException {
+        if (!message.propertyExists(TRIGGER_TIME_PROPERTY)) {
+            return;
+        }
+        Instant now = Instant.now();
+        long nowMicros = now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+        alertLatency.record(nowMicros - message.getLongProperty(TRIGGER_TIME_PROPERTY));
+    }
+
     private void startWebServer() {
-        com.sun.net.httpserver.HttpServer server;
         try {
-            server = com.sun.net.httpserver.HttpServer.create(new java.net.InetSocketAddress(8080), 0);
+            server = com.sun.net.httpserver.HttpServer.create(new java.net.InetSocketAddress(httpPort), 0);
 
             // 新增 API 端点 /api/monitor，返回 JSON 数据
+            // 响应由 monitorCache 缓存，带 ETag：前端携带 If-None-Match 且数据未变时返回 304，客户端接受 gzip 时返回压缩后的字节
             server.createContext("/api/monitor", exchange -> {
                 if ("GET".equals(exchange.getRequestMethod())) {
-                    List<Map<String, Object>> devicesData = new ArrayList<>();
+                    long start = System.nanoTime();
+                    MonitorResponseCache.Response response = monitorCache.get();
 
-                    for (int deviceId : database.getDeviceIds()) {
-                        Map<String, Object> deviceData = new HashMap<>();
+                    // 设置响应头
+                    Headers headers = exchange.getResponseHeaders();
+                    headers.set("Access-Control-Allow-Origin", "*"); // 允许跨域访问
+                    headers.set("ETag", response.getEtag());
+                    headers.set("Cache-Control", "no-cache"); // 浏览器可以缓存，但每次使用前需携带 If-None-Match 重新验证
+                    headers.set("Vary", "Accept-Encoding");
 
-                        // 获取 WARN 和 ERROR 占比
-                        AnalysisResult lastAnalysisResult = database.getLastAnalysisResultsHistory(deviceId);
-                        double warnPercentage = lastAnalysisResult == null ? 0 : lastAnalysisResult.getWarn_percentage();
-                        double errorPercentage = lastAnalysisResult == null ? 0 : lastAnalysisResult.getError_percentage();
-
-                        // 获取最近一次 ERROR 事件时间
-                        String lastErrorTimestamp = lastAnalysisResult == null ? "无数据" : lastAnalysisResult.getLast_error_timestamp();
-
-                        // 获取分析报告发布时间
-                        String anagsisTimestamp = lastAnalysisResult == null ? "无数据" : lastAnalysisResult.getAnalysis_timestamp();
-
-                        // 获取严重告警状态和次数
-                        AlertMessage alert = database.getLastAlertMessage(deviceId);
-                        String alertStatus = alert != null ? alert.getAlert_message() : "无";
-                        String alertTimestamp = alert != null ? alert.getTimestamp() : "0000-00-00 00:00:00";
-                        int alertCount = database.getAlertCount(deviceId);
-
-                        // 构造设备数据
-                        deviceData.put("device_id", deviceId);
-                        deviceData.put("warn_percentage", warnPercentage);
-                        deviceData.put("error_percentage", errorPercentage);
-                        deviceData.put("last_error_timestamp", lastErrorTimestamp);
-                        deviceData.put("alert_status", alertStatus);
-                        deviceData.put("alert_count", alertCount);
-                        deviceData.put("analysis_timestamp", anagsisTimestamp);
-                        deviceData.put("alert_timestamp", alertTimestamp);
-
-                        devicesData.add(deviceData);
+                    if (response.matches(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        notModifiedCount++;
+                        exchange.sendResponseHeaders(304, -1);
+                    } else {
+                        byte[] body = response.getJson();
+                        if (response.getGzip() != null && MonitorResponseCache.acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+                            headers.set("Content-Encoding", "gzip");
+                            body = response.getGzip();
+                        }
+                        headers.set("Content-Type", "application/json; charset=UTF-8");
+                        exchange.sendResponseHeaders(200, body.length);
+
+                        // 写入响应内容
+                        exchange.getResponseBody().write(body);
                     }
+                    exchange.close();
+                    apiResponseTime.record((System.nanoTime() - start) / 1000);
+                }
+            });
 
-                    // 转换为 JSON 格式
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    String jsonResponse = objectMapper.writeValueAsString(devicesData);
+            // API 端点 /api/stream，Server-Sent Events：先推送全量数据，之后推送每个设备的变化
+            server.createContext("/api/stream", stream::handle);
 
-                    // 设置响应头
+            // API 端点 /api/latency，返回监控端的延迟统计（微秒）及各设备的日志接收速率
+            server.createContext("/api/latency", exchange -> {
+                if ("GET".equals(exchange.getRequestMethod())) {
+                    Map<String, Object> latencyData = new LinkedHashMap<>();
+                    latencyData.put("analysis_age_us", analysisAge.summary());
+                    latencyData.put("processing_time_us", processingTime.summary());
+                    latencyData.put("alert_latency_us", alertLatency.summary());
+
+                    Map<Integer, Double> ingestRates = new LinkedHashMap<>();
+                    for (int deviceId : database.getDeviceIds()) {
+                        AnalysisResult lastAnalysisResult = database.getLastAnalysisResultsHistory(deviceId);
+                        if (lastAnalysisResult != null) {
+                            ingestRates.put(deviceId, lastAnalysisResult.getIngest_rate());
+                        }
+                    }
+                    latencyData.put("ingest_rate", ingestRates);
+
+                    byte[] response = OBJECT_MAPPER.writeValueAsBytes(latencyData);
                     exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
                     exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*"); // 允许跨域访问
-                    exchange.sendResponseHeaders(200, jsonResponse.getBytes("UTF-8").length);
+                    exchange.sendResponseHeaders(200, response.length);
+                    exchange.getResponseBody().write(response);
+                    exchange.close();
+                }
+            });
 
-                    // 写入响应内容
-                    exchange.getResponseBody().write(jsonResponse.getBytes("UTF-8"));
+            // API 端点 /api/history?device_id=1&resolution=raw|1m|10m&since=epoch毫秒，返回设备的趋势数据（按时间升序）
+            server.createContext("/api/history", exchange -> {
+                if ("GET".equals(exchange.getRequestMethod())) {
+                    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                    List<Map<String, Object>> points = null;
+                    try {
+                        int deviceId = Integer.parseInt(query.get("device_id"));
+                        long since = query.containsKey("since") ? Long.parseLong(query.get("since")) : 0;
+                        points = database.getHistory(deviceId, query.getOrDefault("resolution", "raw"), since);
+                    } catch (NumberFormatException e) {
+                        // device_id 缺失或格式错误，按参数错误处理
+                    }
+                    byte[] response = points != null
+                            ? OBJECT_MAPPER.writeValueAsBytes(points)
+                            : "需要 device_id 参数，resolution 为 raw、1m 或 10m".getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", points != null ? "application/json; charset=UTF-8" : "text/plain; charset=utf-8");
+                    exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*"); // 允许跨域访问
+                    exchange.sendResponseHeaders(points != null ? 200 : 400, response.length);
+                    exchange.getResponseBody().write(response);
                     exchange.close();
                 }
             });
 
+            // API 端点 /metrics，Prometheus 文本格式的运行指标
+            server.createContext("/metrics", exchange -> {
+                PrometheusWriter writer = new PrometheusWriter();
+                writeMetrics(writer);
+                writer.jvm();
+                byte[] response = writer.toBytes();
+                exchange.getResponseHeaders().set("Content-Type", PrometheusWriter.CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            });
+
+            // API 端点 /health，JMS 连接正常时返回 200，否则返回 503
+            server.createContext("/health", exchange -> {
+                boolean up = isConnectionUp();
+                byte[] response = (up ? "UP" : "DOWN").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(up ? 200 : 503, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            });
+
             server.setExecutor(null); // 使用默认线程池
             server.start();
-            System.out.println("RESTful API 已启动，访问 http://localhost:8080/api/monitor 获取监控数据");
+            System.out.println("RESTful API 已启动，访问 http://localhost:" + getHttpPort() + "/api/monitor 获取监控数据");
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private void writeMetrics(PrometheusWriter writer) {
+        writer.family("logmonitor_messages_consumed_total", "counter", "已接收的消息数");
+        writer.sample("logmonitor_messages_consumed_total", PrometheusWriter.label("queue", ANALYSIS_QUEUE_NAME), analysisConsumedCount);
+        writer.sample("logmonitor_messages_consumed_total", PrometheusWriter.label("queue", ALERT_QUEUE_NAME), alertConsumedCount);
+        writer.family("logmonitor_parse_failures_total", "counter", "无法解析的消息数");
+        writer.sample("logmonitor_parse_failures_total", null, parseFailureCount);
+        writer.family("logmonitor_devices_tracked", "gauge", "数据存储中的设备数");
+        writer.sample("logmonitor_devices_tracked", null, database.getDeviceCount());
+        writer.family("logmonitor_history_bytes", "gauge", "所有设备的趋势数据已分配的字节数");
+        writer.sample("logmonitor_history_bytes", null, database.getHistoryBytes());
+        writer.family("logmonitor_api_monitor_rebuilds_total", "counter", "/api/monitor 因数据变化重新生成响应的次数");
+        writer.sample("logmonitor_api_monitor_rebuilds_total", null, monitorCache.getRebuildCount());
+        writer.family("logmonitor_api_monitor_not_modified_total", "counter", "/api/monitor 返回 304（数据未变化）的次数");
+        writer.sample("logmonitor_api_monitor_not_modified_total", null, notModifiedCount);
+        writer.family("logmonitor_stream_clients", "gauge", "/api/stream 已连接的客户端数");
+        writer.sample("logmonitor_stream_clients", null, stream.getClientCount());
+        writer.family("logmonitor_stream_events_total", "counter", "/api/stream 推送的设备变化事件数");
+        writer.sample("logmonitor_stream_events_total", null, stream.getEventCount());
+        writer.family("logmonitor_stream_dropped_clients_total", "counter", "/api/stream 因读取太慢被断开的客户端数");
+        writer.sample("logmonitor_stream_dropped_clients_total", null, stream.getDroppedCount());
+        writer.family("logmonitor_jms_connection_up", "gauge", "JMS 连接是否正常，1 表示正常");
+        writer.sample("logmonitor_jms_connection_up", null, isConnectionUp() ? 1 : 0);
+
+        writer.family("logmonitor_analysis_age_seconds", "summary", "分析结果从发布到被监控端接收的时延（秒）");
+        writer.summary("logmonitor_analysis_age_seconds", null, analysisAge);
+        writer.family("logmonitor_alert_latency_seconds", "summary", "告警从触发日志发送到被监控端接收的时延（秒）");
+        writer.summary("logmonitor_alert_latency_seconds", null, alertLatency);
+        // 各阶段耗时：consume 为每条消息的处理，api 为 /api/monitor 生成响应
+        writer.family("logmonitor_stage_seconds", "summary", "各处理阶段的耗时（秒）");
+        writer.summary("logmonitor_stage_seconds", PrometheusWriter.label("stage", "consume"), processingTime);
+        writer.summary("logmonitor_stage_seconds", PrometheusWriter.label("stage", "api"), apiResponseTime);
+    }
+
+    // 解析 URL 查询参数（name=value&...），参数值按 UTF-8 解码
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    // JMS 连接是否正常：未关闭、传输层未断开且已启动
+    public boolean isConnectionUp() {
+        if (connection instanceof ActiveMQConnection) {
+            ActiveMQConnection activeMQConnection = (ActiveMQConnection) connection;
+            return !activeMQConnection.isClosed() && !activeMQConnection.isTransportFailed() && activeMQConnection.isStarted();
+        }
+        return connection != null;
+    }
+
+    // 实际监听的端口（构造时传入 0 时由系统分配）
+    public int getHttpPort() {
+        return server == null ? httpPort : server.getAddress().getPort();
+    }
+
+    public LatencyHistogram getAnalysisAge() {
+        return analysisAge;
+    }
+
+    public LatencyHistogram getProcessingTime() {
+        return processingTime;
+    }
+
+    public LatencyHistogram getAlertLatency() {
+        return alertLatency;
+    }
+
+    public void close() throws JMSException {
+        stream.close();
+        if (server != null) {
+            server.stop(0);
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
 
     public static void main(String[] args) {
         LogMonitor logMonitor = new LogMonitor();
@@ -0,0 +1,39 @@
+package com.logmonitor;
+
+// 设备高频日志内容统计中的一项：日志级别、日志内容及其出现次数（估计值）
+public class MessageCount {
+    private String log_level; // 日志级别（ERROR/WARN）
+    private String message; // 日志内容
+    private long count; // 出现次数，可能略高于真实值，最大偏差不超过被替换项的计数
+
+    public MessageCount(String log_level, String message, long count) {
+        this.log_level = log_level;
+        this.message = message;
+        this.count = count;
+    }
+
+    // Getter 和 Setter 方法
+    public String getLog_level() {
+        return log_level;
+    }
+
+    public void setLog_level(String log_level) {
+        this.log_level = log_level;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,173 @@
+package com.logmonitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 单个设备的趋势数据：ERROR 占比、WARN 占比、日志接收速率，按三种分辨率分别保存在固定容量的环形缓冲中
+// - raw：每条分析结果一个点，保留最近 1 小时（最多 RAW_CAPACITY 个点，分析结果发布得更频繁时保留的时间更短）
+// - 1m：每分钟一个点（最小值/最大值/平均值），保留 1 天
+// - 10m：每 10 分钟一个点，保留 30 天
+// 每条分析结果同时累加到三个分辨率的当前时间段中，时间段结束后该点即为该时间段的汇总；
+// 缓冲在第一个点写入时才分配，按实际记录的点数翻倍扩容到容量上限后循环覆盖最旧的点，单个设备最多占用约 MAX_BYTES 字节
+// 内存占用由保留时长决定（每个点 BYTES_PER_POINT = 48 字节）：默认 raw 720 个点约 34KB、1m 1440 个点约 68KB、
+// 10m 4320 个点约 203KB，每个设备运行满 30 天后约 304KB，1 万台设备约 3GB、10 万台约 30GB；
+// 设备较多时应缩短保留时长（10m 占大部分），保留时长为 0 的分辨率不保存
+// 由 MonitorDataStore 在锁内访问
+public class MetricHistory {
+    public static final String[] RESOLUTIONS = {"raw", "1m", "10m"}; // 可查询的分辨率
+    public static final String[] METRICS = {"error_percentage", "warn_percentage", "ingest_rate"};
+
+    private static final long RAW_RETENTION_MILLIS = 60 * 60 * 1000L; // 原始点保留 1 小时
+    private static final int RAW_CAPACITY = RAW_RETENTION_MILLIS > 0 ? 720 : 0; // 原始点的容量（分析器默认每 5 秒发布一次，即 1 小时）
+    private static final long MINUTE_RETENTION_MILLIS = 24 * 60 * 60 * 1000L; // 1 分钟汇总保留 1 天
+    private static final long TEN_MINUTE_RETENTION_MILLIS = 30 * 24 * 60 * 60 * 1000L; // 10 分钟汇总保留 30 天
+    private static final long[] EMPTY_TIMES = {};
+    private static final int[] EMPTY_COUNTS = {};
+    private static final float[] EMPTY_VALUES = {};
+    private static final int INITIAL_CAPACITY = 16; // 环形缓冲第一次分配的大小，按需翻倍直到容量上限
+    private static final int VALUES_PER_POINT = METRICS.length * 3; // 每个点每个指标保存 最小值、最大值、总和
+    private static final int BYTES_PER_POINT = 8 + 4 + VALUES_PER_POINT * 4; // 时间 + 样本数 + 指标值
+
+    public static final long MAX_BYTES; // 单个设备的趋势数据最多占用的字节数（不含对象头）
+
+    private final Tier[] tiers = {
+            new Tier(0, RAW_RETENTION_MILLIS, RAW_CAPACITY),
+            new Tier(60 * 1000L, MINUTE_RETENTION_MILLIS, (int) (MINUTE_RETENTION_MILLIS / (60 * 1000L))),
+            new Tier(10 * 60 * 1000L, TEN_MINUTE_RETENTION_MILLIS, (int) (TEN_MINUTE_RETENTION_MILLIS / (10 * 60 * 1000L)))
+    };
+    private final float[] sample = new float[METRICS.length]; // 复用的单个样本
+
+    static {
+        long capacity = RAW_CAPACITY + MINUTE_RETENTION_MILLIS / (60 * 1000L) + TEN_MINUTE_RETENTION_MILLIS / (10 * 60 * 1000L);
+        MAX_BYTES = capacity * BYTES_PER_POINT;
+    }
+
+    // 记录一条分析结果（timeMillis 为监控端收到的时间）
+    public void record(long timeMillis, AnalysisResult result) {
+        sample[0] = (float) result.getError_percentage();
+        sample[1] = (float) result.getWarn_percentage();
+        sample[2] = (float) result.getIngest_rate();
+        for (Tier tier : tiers) {
+            tier.add(timeMillis, sample);
+        }
+    }
+
+    // 查询指定分辨率在 sinceMillis 之后（且未超过保留时间）的点，按时间升序；分辨率无效时返回 null
+    // raw 的每个点为 {time, 各指标}；汇总的点为 {time, count, 各指标（平均值）, 各指标_min, 各指标_max}
+    public List<Map<String, Object>> query(String resolution, long sinceMillis, long nowMillis) {
+        int index = Arrays.asList(RESOLUTIONS).indexOf(resolution);
+        return index < 0 ? null : tiers[index].query(Math.max(sinceMillis, nowMillis - tiers[index].retentionMillis));
+    }
+
+    // 当前已分配的字节数
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Tier tier : tiers) {
+            bytes += (long) tier.times.length * BYTES_PER_POINT;
+        }
+        return bytes;
+    }
+
+    // 一种分辨率的环形缓冲，列式存储：times[i]、counts[i]、values[i * VALUES_PER_POINT ...]
+    private static final class Tier {
+        final long resolutionMillis; // 每个点覆盖的时长，0 表示每个样本一个点
+        final long retentionMillis; // 查询时只返回该时长以内的点
+        final int capacity; // 最多保存的点数
+        long[] times = EMPTY_TIMES; // 点的起始时间（epoch 毫秒），第一个点写入时分配
+        int[] counts = EMPTY_COUNTS; // 点内的样本数
+        float[] values = EMPTY_VALUES;
+        int start = 0; // 最旧的点所在位置
+        int size = 0;
+
+        Tier(long resolutionMillis, long retentionMillis, int capacity) {
+            this.resolutionMillis = resolutionMillis;
+            this.retentionMillis = retentionMillis;
+            this.capacity = capacity;
+        }
+
+        void add(long timeMillis, float[] sample) {
+            if (capacity == 0) {
+                return; // 不保存该分辨率
+            }
+            long pointTime = resolutionMillis > 0 ? timeMillis - Math.floorMod(timeMillis, resolutionMillis) : timeMillis;
+            if (size > 0 && resolutionMillis > 0) {
+                int last = slot(size - 1);
+                if (pointTime <= times[last]) { // 同一时间段（或时钟回拨）累加到最后一个点
+                    merge(last, sample);
+                    return;
+                }
+            }
+
+            int slot;
+            if (size < capacity) {
+                if (size == times.length) {
+                    grow();
+                }
+                slot = slot(size++);
+            } else {
+                slot = start; // 已满，覆盖最旧的点
+                start = (start + 1) % times.length;
+            }
+            times[slot] = pointTime;
+            counts[slot] = 1;
+            int base = slot * VALUES_PER_POINT;
+            for (int m = 0; m < sample.length; m++) {
+                values[base + m * 3] = sample[m];
+                values[base + m * 3 + 1] = sample[m];
+                values[base + m * 3 + 2] = sample[m];
+            }
+        }
+
+        private void merge(int slot, float[] sample) {
+            counts[slot]++;
+            int base = slot * VALUES_PER_POINT;
+            for (int m = 0; m < sample.length; m++) {
+                values[base + m * 3] = Math.min(values[base + m * 3], sample[m]);
+                values[base + m * 3 + 1] = Math.max(values[base + m * 3 + 1], sample[m]);
+                values[base + m * 3 + 2] += sample[m];
+            }
+        }
+
+        // 未写满容量前 start 始终为 0，直接扩容即可
+        private void grow() {
+            int length = Math.min(Math.max(times.length * 2, INITIAL_CAPACITY), capacity);
+            times = Arrays.copyOf(times, length);
+            counts = Arrays.copyOf(counts, length);
+            values = Arrays.copyOf(values, length * VALUES_PER_POINT);
+        }
+
+        private int slot(int i) {
+            return (start + i) % times.length;
+        }
+
+        List<Map<String, Object>> query(long sinceMillis) {
+            List<Map<String, Object>> points = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int slot = slot(i);
+                if (times[slot] + Math.max(resolutionMillis, 1) <= sinceMillis) {
+                    continue; // 点覆盖的时间段在 sinceMillis 之前已结束
+                }
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("time", times[slot]);
+                int base = slot * VALUES_PER_POINT;
+                if (resolutionMillis == 0) {
+                    for (int m = 0; m < METRICS.length; m++) {
+                        point.put(METRICS[m], values[base + m * 3]);
+                    }
+                } else {
+                    point.put("count", counts[slot]);
+                    for (int m = 0; m < METRICS.length; m++) {
+                        point.put(METRICS[m], values[base + m * 3 + 2] / counts[slot]);
+                        point.put(METRICS[m] + "_min", values[base + m * 3]);
+                        point.put(METRICS[m] + "_max", values[base + m * 3 + 1]);
+                    }
+                }
+                points.add(point);
+            }
+            return points;
+        }
+    }
+}
@@ -1,78 +1,165 @@
 package com.logmonitor;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class MonitorDataStore {
-    private Map<Integer, List<AnalysisResult>> analysisResultsHistory = new HashMap<>();
-    private Map<Integer, List<AlertMessage>> alertMessagesHistory = new HashMap<>();
+    private static final long DEVICE_TTL_MILLIS = 10 * 60 * 1000; // 设备超过该时间没有新的分析结果或告警即删除其数据
+    private static final long EVICTION_INTERVAL_MILLIS = 5000; // 检查空闲设备的最小间隔
 
+    private final IntObjectMap<DeviceRecord> devices = new IntObjectMap<>(); // 每个设备的分析结果和告警信息
+    private long lastEvictionMillis = System.currentTimeMillis(); // 上次检查空闲设备的时间
+    private long version = 0; // 数据版本号，每次写入或删除设备时加一，用于判断缓存的响应是否过期
+
+    // 保存最新的分析结果，并按收到的时间记入该设备的趋势数据
     public synchronized void addAnalysisResult(AnalysisResult result) {
-        int device_id = result.getDevice_id();
-        analysisResultsHistory.putIfAbsent(device_id, new ArrayList<>());
-        analysisResultsHistory.get(device_id).add(result);
+        DeviceRecord record = touch(result.getDevice_id());
+        record.setLastAnalysisResult(result);
+        record.getHistory().record(record.getLastUpdateMillis(), result);
+        version++;
+    }
+
+    // 批量写入一个分析快照中的所有结果，在同一把锁内完成，读取方不会看到只应用了一部分的快照
+    public synchronized void addAnalysisResults(List<AnalysisResult> results) {
+        for (AnalysisResult result : results) {
+            addAnalysisResult(result);
+        }
     }
 
-    public synchronized List<AnalysisResult> getAnalysisResultsHistory(int device_id) {
-        return analysisResultsHistory.getOrDefault(device_id, new ArrayList<>());
+    // 获取指定设备在 sinceMillis 之后的趋势数据（resolution 为 raw / 1m / 10m），设备不存在时返回空列表，分辨率无效时返回 null
+    public synchronized List<Map<String, Object>> getHistory(int device_id, String resolution, long sinceMillis) {
+        DeviceRecord record = devices.get(device_id);
+        if (record == null) {
+            return Arrays.asList(MetricHistory.RESOLUTIONS).contains(resolution) ? new ArrayList<>() : null;
+        }
+        return record.getHistory().query(resolution, sinceMillis, System.currentTimeMillis());
+    }
+
+    // 所有设备的趋势数据已分配的字节数
+    public synchronized long getHistoryBytes() {
+        long bytes = 0;
+        for (int i = 0; i < devices.size(); i++) {
+            bytes += devices.valueAt(i).getHistory().getAllocatedBytes();
+        }
+        return bytes;
     }
 
     public synchronized AnalysisResult getLastAnalysisResultsHistory(int device_id) {
-        // 获取指定设备的历史分析结果列表
-        List<AnalysisResult> results = analysisResultsHistory.getOrDefault(device_id, new ArrayList<>());
+        DeviceRecord record = devices.get(device_id);
+        AnalysisResult result = record == null ? null : record.getLastAnalysisResult();
 
-        // 如果列表为空，返回 null 或抛出异常（根据需求）
-        if (results.isEmpty()) {
+        // 如果还没有分析结果，返回 null
+        if (result == null) {
             System.out.println("No analysis results found for device ID: " + device_id);
-            return null;
         }
-
-        // 返回列表中的最后一个元素（即最后一次分析结果）
-        return results.get(results.size() - 1);
+        return result;
     }
 
     // 添加告警信息
     public synchronized void addAlertMessage(AlertMessage alert) {
-        int device_id = alert.getDevice_id();
-        alertMessagesHistory.putIfAbsent(device_id, new ArrayList<>());
-        alertMessagesHistory.get(device_id).add(alert);
+        DeviceRecord record = touch(alert.getDevice_id());
+        record.addAlertMessage(alert);
+
+        // 只有新触发的告警计入告警次数，持续提醒和解除消息不重复计数
+        if (AlertMessage.STATE_RAISED.equals(alert.getAlert_state())) {
+            record.incrementAlertCount();
+        }
+        version++;
     }
 
-    // 获取告警信息列表
+    // 获取最近的告警信息列表（副本，从旧到新）
     public synchronized List<AlertMessage> getAlertMessagesHistory(int device_id) {
-        return alertMessagesHistory.getOrDefault(device_id, new ArrayList<>());
+        DeviceRecord record = devices.get(device_id);
+        return record == null ? new ArrayList<>() : new ArrayList<>(record.getAlertMessages());
     }
 
     // 获取某设备最后一条告警信息
     public synchronized AlertMessage getLastAlertMessage(int device_id) {
-        List<AlertMessage> alerts = alertMessagesHistory.getOrDefault(device_id, new ArrayList<>());
+        DeviceRecord record = devices.get(device_id);
+        AlertMessage alert = record == null ? null : record.getAlertMessages().peekLast();
 
-        if (alerts.isEmpty()) {
+        if (alert == null) {
             System.out.println("No alert messages found for device ID: " + device_id);
-            return null;
         }
-
-        return alerts.get(alerts.size() - 1); // 返回最后一个元素
+        return alert;
     }
 
-    // 获取某设备的告警次数
+    // 获取某设备的告警次数（触发告警的次数）
     public synchronized int getAlertCount(int device_id) {
-        List<AlertMessage> alerts = alertMessagesHistory.getOrDefault(device_id, new ArrayList<>());
-        return alerts.size(); // 返回告警信息的数量
+        DeviceRecord record = devices.get(device_id);
+        return record == null ? 0 : record.getAlertCount();
     }
 
-    // 获取所有设备ID列表
-    public synchronized List<Integer> getDeviceIds() {
-        Set<Integer> deviceIds = new HashSet<>();
+    // 当前保存的设备数
+    public synchronized int getDeviceCount() {
+        return devices.size();
+    }
 
-        // 添加来自 analysisResultsHistory 的设备 ID
-        deviceIds.addAll(analysisResultsHistory.keySet());
+    // 获取所有活跃设备的ID（升序）
+    public synchronized int[] getDeviceIds() {
+        evictIdleDevices(System.currentTimeMillis());
+        return sortedDeviceIds();
+    }
 
-        // 添加来自 alertMessagesHistory 的设备 ID
-        deviceIds.addAll(alertMessagesHistory.keySet());
+    // 当前的数据版本号（先删除空闲超时的设备，删除也会改变版本号）
+    public synchronized long getVersion() {
+        evictIdleDevices(System.currentTimeMillis());
+        return version;
+    }
 
-        // 返回排序后的设备 ID 列表
-        List<Integer> sortedDeviceIds = new ArrayList<>(deviceIds);
-        Collections.sort(sortedDeviceIds);
-        return sortedDeviceIds;
+    // 在同一把锁内按设备ID升序遍历所有设备，返回遍历时的数据版本号；visitor 不能保留 DeviceRecord 的引用
+    public synchronized long forEachDevice(Consumer<DeviceRecord> visitor) {
+        evictIdleDevices(System.currentTimeMillis());
+        for (int deviceId : sortedDeviceIds()) {
+            visitor.accept(devices.get(deviceId));
+        }
+        return version;
+    }
+
+    // 在同一把锁内遍历指定的设备（已删除的设备跳过）
+    public synchronized void forEachDevice(int[] deviceIds, Consumer<DeviceRecord> visitor) {
+        for (int deviceId : deviceIds) {
+            DeviceRecord record = devices.get(deviceId);
+            if (record != null) {
+                visitor.accept(record);
+            }
+        }
+    }
+
+    private int[] sortedDeviceIds() {
+        int[] deviceIds = new int[devices.size()];
+        for (int i = 0; i < deviceIds.length; i++) {
+            deviceIds[i] = devices.keyAt(i);
+        }
+        Arrays.sort(deviceIds);
+        return deviceIds;
+    }
+
+    // 获取（必要时创建）设备记录并刷新其最近更新时间
+    private DeviceRecord touch(int device_id) {
+        long now = System.currentTimeMillis();
+        evictIdleDevices(now);
+        DeviceRecord record = devices.get(device_id);
+        if (record == null) {
+            record = new DeviceRecord(device_id);
+            devices.put(device_id, record);
+        }
+        record.setLastUpdateMillis(now);
+        return record;
+    }
+
+    // 删除空闲超时的设备，最多每 EVICTION_INTERVAL_MILLIS 扫描一次
+    private void evictIdleDevices(long now) {
+        if (now - lastEvictionMillis < EVICTION_INTERVAL_MILLIS) {
+            return;
+        }
+        lastEvictionMillis = now;
+        for (int i = devices.size() - 1; i >= 0; i--) {
+            if (now - devices.valueAt(i).getLastUpdateMillis() > DEVICE_TTL_MILLIS) {
+                System.out.println("设备 " + devices.keyAt(i) + " 空闲超时，已删除监控数据");
+                devices.removeAt(i);
+                version++;
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,179 @@
+package com.logmonitor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+// /api/monitor 的响应缓存：保存序列化好的 JSON（以及 gzip 压缩后的字节），只有数据存储的版本号变化后才重新生成
+// 多个前端同时轮询时，数据变化后的第一个请求遍历设备并序列化，其余请求直接返回缓存的字节，或在 ETag 未变时返回 304
+public class MonitorResponseCache {
+    private static final int GZIP_MIN_BYTES = 1024; // 小于该大小的响应不压缩
+
+    private final MonitorDataStore database;
+    private final ObjectMapper objectMapper;
+    private final String etagPrefix = Long.toHexString(System.currentTimeMillis()); // 区分重启前后的版本号
+    private volatile Response current; // 最近一次生成的响应
+    private volatile long rebuildCount = 0; // 重新生成响应的次数
+
+    // 一个版本的响应，生成后不再修改，可被多个请求线程同时读取
+    public static final class Response {
+        private final long version;
+        private final String etag;
+        private final byte[] json;
+        private final byte[] gzip; // 响应较小时为 null
+
+        private Response(long version, String etag, byte[] json, byte[] gzip) {
+            this.version = version;
+            this.etag = etag;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        // 请求的 If-None-Match 是否包含当前 ETag（或为 *）
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2); // 弱校验，比较时忽略前缀
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public MonitorResponseCache(MonitorDataStore database, ObjectMapper objectMapper) {
+        this.database = database;
+        this.objectMapper = objectMapper;
+    }
+
+    // 获取与数据存储当前版本一致的响应，版本变化时重新生成
+    public Response get() throws IOException {
+        Response response = current;
+        if (response != null && response.version == database.getVersion()) {
+            return response;
+        }
+        synchronized (this) {
+            // 等待锁期间其他线程可能已经生成了最新的响应
+            response = current;
+            if (response == null || response.version != database.getVersion()) {
+                response = build();
+                current = response;
+                rebuildCount++;
+            }
+            return response;
+        }
+    }
+
+    public long getRebuildCount() {
+        return rebuildCount;
+    }
+
+    // 在数据存储的锁内一次遍历所有设备取出需要的字段，锁外序列化和压缩
+    private Response build() throws IOException {
+        List<Map<String, Object>> devicesData = new ArrayList<>();
+        long version = database.forEachDevice(record -> devicesData.add(toDeviceData(record)));
+
+        byte[] json = objectMapper.writeValueAsBytes(devicesData);
+        byte[] gzip = json.length >= GZIP_MIN_BYTES ? gzip(json) : null;
+        return new Response(version, "\"" + etagPrefix + "-" + Long.toHexString(version) + "\"", json, gzip);
+    }
+
+    // 指定设备的最新数据（与 /api/monitor 中的元素格式相同），用于推送设备变化
+    public byte[] devicesJson(int[] deviceIds) throws IOException {
+        List<Map<String, Object>> devicesData = new ArrayList<>();
+        database.forEachDevice(deviceIds, record -> devicesData.add(toDeviceData(record)));
+        return objectMapper.writeValueAsBytes(devicesData);
+    }
+
+    private static Map<String, Object> toDeviceData(DeviceRecord record) {
+        Map<String, Object> deviceData = new HashMap<>();
+
+        // 最新的分析结果：WARN 和 ERROR 占比、最近一次 ERROR 事件时间、分析报告发布时间、出现次数最多的 ERROR/WARN 日志内容
+        AnalysisResult lastAnalysisResult = record.getLastAnalysisResult();
+        double warnPercentage = lastAnalysisResult == null ? 0 : lastAnalysisResult.getWarn_percentage();
+        double errorPercentage = lastAnalysisResult == null ? 0 : lastAnalysisResult.getError_percentage();
+        String lastErrorTimestamp = lastAnalysisResult == null ? "无数据" : lastAnalysisResult.getLast_error_timestamp();
+        String anagsisTimestamp = lastAnalysisResult == null ? "无数据" : lastAnalysisResult.getAnalysis_timestamp();
+        List<MessageCount> topMessages = lastAnalysisResult == null ? new ArrayList<>() : lastAnalysisResult.getTop_messages();
+
+        // 严重告警状态和次数
+        AlertMessage alert = record.getAlertMessages().peekLast();
+        String alertStatus = alert != null ? alert.getAlert_message() : "无";
+        String alertTimestamp = alert != null ? alert.getTimestamp() : "0000-00-00 00:00:00";
+        String alertState = alert != null ? alert.getAlert_state() : AlertMessage.STATE_CLEARED;
+
+        // 构造设备数据
+        deviceData.put("device_id", record.getDeviceId());
+        deviceData.put("warn_percentage", warnPercentage);
+        deviceData.put("error_percentage", errorPercentage);
+        deviceData.put("last_error_timestamp", lastErrorTimestamp);
+        deviceData.put("alert_status", alertStatus);
+        deviceData.put("alert_state", alertState);
+        deviceData.put("alert_count", record.getAlertCount());
+        deviceData.put("analysis_timestamp", anagsisTimestamp);
+        deviceData.put("alert_timestamp", alertTimestamp);
+        deviceData.put("top_messages", topMessages);
+        deviceData.put("ingest_rate", lastAnalysisResult == null ? 0 : lastAnalysisResult.getIngest_rate());
+        deviceData.put("degraded", lastAnalysisResult != null && lastAnalysisResult.isDegraded());
+        return deviceData;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // 请求的 Accept-Encoding 是否接受 gzip（q=0 表示不接受）
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(param.substring(2)) == 0;
+                    } catch (NumberFormatException e) {
+                        // q 值格式错误，按接受处理
+                    }
+                }
+            }
+            return !rejected;
+        }
+        return false;
+    }
+}
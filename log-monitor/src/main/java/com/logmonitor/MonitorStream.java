@@ -0,0 +1,162 @@
+package com.logmonitor;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// /api/stream 的 Server-Sent Events 推送：客户端连接后先收到一次全量数据（snapshot 事件，与 /api/monitor 的响应相同），
+// 之后每当分析结果或告警写入数据存储，推送变化设备的最新数据（update 事件，JSON 数组，元素格式与 /api/monitor 相同）
+// 每个客户端有一个容量为 CLIENT_BUFFER_EVENTS 的事件队列和一个负责写出的线程；推送方只做非阻塞的入队，
+// 队列满（客户端读取太慢）时断开该客户端，不会拖慢消息监听线程和其他客户端。浏览器的 EventSource 断开后自动重连并重新收到快照
+// 写出线程使用平台线程：HttpServer 的响应流在 synchronized 方法内写 socket，虚拟线程阻塞在其中时会占住载体线程，
+// 一个读取缓慢的客户端就会让其他客户端的写出线程无法运行
+public class MonitorStream {
+    private static final int MAX_CLIENTS = 1000; // 同时连接的客户端上限，超过时返回 503
+    private static final int CLIENT_BUFFER_EVENTS = 256; // 每个客户端最多缓存的未发送事件数
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 15000; // 没有事件时发送注释行的间隔，用于及时发现已断开的客户端
+    private static final long RETRY_MILLIS = 3000; // 建议浏览器断开后等待多久重连
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final MonitorResponseCache monitorCache;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>(); // 已连接的客户端
+    private final AtomicLong droppedCount = new AtomicLong(); // 因读取太慢被断开的客户端数
+    private volatile long eventCount = 0; // 推送的 update 事件数（在锁内递增）
+
+    public MonitorStream(MonitorResponseCache monitorCache) {
+        this.monitorCache = monitorCache;
+    }
+
+    // 处理 /api/stream 请求：返回响应头后由客户端的写出线程持有连接，HTTP 服务的分发线程立即返回
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*"); // 允许跨域访问
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        if (clients.size() >= MAX_CLIENTS) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // 长度未知，分块传输
+
+        Client client = new Client(exchange);
+        client.thread = Thread.ofPlatform().daemon().name("monitor-stream-client").start(client);
+        synchronized (this) {
+            // 与 publish 互斥，快照总是客户端的第一个事件；先登记再生成快照，
+            // 快照之前写入数据存储的变化已包含在快照中，之后的变化一定会以 update 事件送达（可能重复推送，不会遗漏）
+            clients.add(client);
+            try {
+                byte[] snapshot = monitorCache.get().getJson();
+                client.offer(event("retry: " + RETRY_MILLIS + "\nevent: snapshot\ndata: ", snapshot));
+            } catch (IOException e) {
+                e.printStackTrace();
+                drop(client);
+            }
+        }
+    }
+
+    // 推送指定设备的最新数据，由消息监听线程在写入数据存储后调用；没有客户端时不做任何事
+    public void publish(int[] deviceIds) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            byte[] event;
+            try {
+                event = event("event: update\ndata: ", monitorCache.devicesJson(deviceIds));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            for (Client client : clients) {
+                if (!client.offer(event)) {
+                    droppedCount.incrementAndGet();
+                    System.out.println("推送客户端 " + client.exchange.getRemoteAddress() + " 读取太慢，已断开");
+                    drop(client);
+                }
+            }
+            eventCount++;
+        }
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    // 断开所有客户端
+    public void close() {
+        for (Client client : clients) {
+            drop(client);
+        }
+    }
+
+    private void drop(Client client) {
+        clients.remove(client);
+        client.thread.interrupt(); // 等待事件或阻塞在写出中的线程都会退出，阻塞的写出会关闭连接
+    }
+
+    // 一个 SSE 事件：header 之后跟 JSON（不含换行），以空行结束
+    private static byte[] event(String header, byte[] json) {
+        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+        byte[] event = new byte[headerBytes.length + json.length + 2];
+        System.arraycopy(headerBytes, 0, event, 0, headerBytes.length);
+        System.arraycopy(json, 0, event, headerBytes.length, json.length);
+        event[event.length - 2] = '\n';
+        event[event.length - 1] = '\n';
+        return event;
+    }
+
+    // 一个已连接的客户端
+    private final class Client implements Runnable {
+        private final HttpExchange exchange;
+        private final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(CLIENT_BUFFER_EVENTS); // 待写出的事件
+        private volatile Thread thread; // 写出线程
+
+        Client(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        // 非阻塞入队，队列已满时返回 false
+        boolean offer(byte[] event) {
+            return queue.offer(event);
+        }
+
+        @Override
+        public void run() {
+            try (OutputStream out = exchange.getResponseBody()) {
+                while (!Thread.currentThread().isInterrupted()) {
+                    byte[] event = queue.poll(HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    out.write(event != null ? event : HEARTBEAT);
+                    // 已排队的其他事件一起写出后再 flush
+                    while ((event = queue.poll()) != null) {
+                        out.write(event);
+                    }
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // 客户端已断开，或读取太慢被断开
+            } finally {
+                clients.remove(this);
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.logproducer;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Session;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+// 日志消息的紧凑二进制编码，通过 BytesMessage 传输
+// 消息带 wire_format=binary 属性；未带该属性的消息按 JSON TextMessage 处理，新旧格式可以同时存在
+//
+// 编码约定：
+//   整数使用 varint（每字节 7 位，高位为延续标志）
+//   时间戳写为 epoch 毫秒 + 1 的 varint；0 表示后面跟随原始字符串（无法按 yyyy-MM-dd HH:mm:ss 解析的时间戳）
+//   时间戳字符串不带时区，固定按 UTC 换算，收发双方的时区不同也能还原出相同的字符串
+//   字符串写为字典编号的 varint；0 表示后面跟随 长度varint + UTF-8 字节
+//   日志级别写为 1 个字节：0 INFO / 1 WARN / 2 ERROR / 3 其他（后面跟随字符串）
+public final class BinaryCodec {
+    public static final String WIRE_FORMAT_PROPERTY = "wire_format"; // 标记消息编码格式的 JMS 属性
+    public static final String WIRE_FORMAT_BINARY = "binary";
+
+    private static final byte VERSION = 1;
+
+    // 常见字符串字典，编号从 1 开始；各模块必须保持一致，只能在末尾追加
+    private static final String[] DICTIONARY = {
+            "系统状态正常",
+            "磁盘空间不足",
+            "数据库连接失败",
+            "无",
+            "0000-00-00 00:00:00",
+            "ERROR占比超过50%",
+            "ERROR占比持续超过50%",
+            "ERROR占比已恢复正常",
+            "RAISED",
+            "SUSTAINED",
+            "CLEARED",
+            "full",
+            "delta"
+    };
+    private static final String[] LEVELS = {"INFO", "WARN", "ERROR"};
+    private static final byte LEVEL_OTHER = 3;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    // 最近一次时间戳转换结果（同一秒内的消息直接复用），不可变对象，多线程下替换引用即可
+    private static volatile CachedTimestamp timestampCache = new CachedTimestamp(Long.MIN_VALUE, "");
+
+    private BinaryCodec() {
+    }
+
+    // ---------------- LogMessage ----------------
+
+    public static BytesMessage createLogMessage(Session session, LogMessage logMessage) throws JMSException {
+        Buffer buffer = buffer();
+        buffer.writeByte(VERSION);
+        writeLogFields(buffer, logMessage);
+        return toBytesMessage(session, buffer);
+    }
+
+    // 批量信封：版本号 + 日志条数 varint + 依次排列的日志
+    public static BytesMessage createLogBatch(Session session, List<LogMessage> logMessages) throws JMSException {
+        Buffer buffer = buffer();
+        buffer.writeByte(VERSION);
+        buffer.writeVarLong(logMessages.size());
+        for (LogMessage logMessage : logMessages) {
+            writeLogFields(buffer, logMessage);
+        }
+        return toBytesMessage(session, buffer);
+    }
+
+    private static void writeLogFields(Buffer buffer, LogMessage logMessage) {
+        buffer.writeVarLong(logMessage.getDevice_id() & 0xFFFFFFFFL);
+        writeTimestamp(buffer, logMessage.getTimestamp());
+        writeLevel(buffer, logMessage.getLog_level());
+        writeString(buffer, logMessage.getMessage());
+    }
+
+    // ---------------- 字段编码 ----------------
+
+    private static void writeTimestamp(Buffer buffer, String timestamp) {
+        long millis = toEpochMillis(timestamp);
+        if (millis < 0) {
+            buffer.writeVarLong(0);
+            writeInlineString(buffer, timestamp);
+        } else {
+            buffer.writeVarLong(millis + 1);
+        }
+    }
+
+    private static void writeLevel(Buffer buffer, String logLevel) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(logLevel)) {
+                buffer.writeByte((byte) i);
+                return;
+            }
+        }
+        buffer.writeByte(LEVEL_OTHER);
+        writeString(buffer, logLevel);
+    }
+
+    private static void writeString(Buffer buffer, String value) {
+        if (value != null) {
+            for (int i = 0; i < DICTIONARY.length; i++) {
+                if (DICTIONARY[i].equals(value)) {
+                    buffer.writeVarLong(i + 1);
+                    return;
+                }
+            }
+        }
+        buffer.writeVarLong(0);
+        writeInlineString(buffer, value);
+    }
+
+    // 长度写为 varint（null 写为 0，其余为字节数 + 1），随后是 UTF-8 字节
+    private static void writeInlineString(Buffer buffer, String value) {
+        if (value == null) {
+            buffer.writeVarLong(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.writeVarLong(bytes.length + 1L);
+        buffer.writeBytes(bytes);
+    }
+
+    // 将 yyyy-MM-dd HH:mm:ss 时间戳转换为 epoch 毫秒；无法解析或不能无损还原时返回 -1
+    private static long toEpochMillis(String timestamp) {
+        if (timestamp == null) {
+            return -1;
+        }
+        CachedTimestamp cached = timestampCache;
+        if (timestamp.equals(cached.text)) {
+            return cached.millis;
+        }
+        try {
+            long millis = LocalDateTime.parse(timestamp, TIMESTAMP_FORMATTER)
+                    .toInstant(ZoneOffset.UTC).toEpochMilli();
+            if (millis < 0 || !timestamp.equals(formatEpochMillis(millis))) {
+                return -1;
+            }
+            return millis;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static String formatEpochMillis(long millis) {
+        CachedTimestamp cached = timestampCache;
+        if (millis == cached.millis) {
+            return cached.text;
+        }
+        String text = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC).format(TIMESTAMP_FORMATTER);
+        timestampCache = new CachedTimestamp(millis, text);
+        return text;
+    }
+
+    // ---------------- 缓冲区 ----------------
+
+    private static Buffer buffer() {
+        Buffer buffer = BUFFER.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    private static BytesMessage toBytesMessage(Session session, Buffer buffer) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(buffer.bytes, 0, buffer.position);
+        message.setStringProperty(WIRE_FORMAT_PROPERTY, WIRE_FORMAT_BINARY);
+        return message;
+    }
+
+    private static final class CachedTimestamp {
+        final long millis;
+        final String text;
+
+        CachedTimestamp(long millis, String text) {
+            this.millis = millis;
+            this.text = text;
+        }
+    }
+
+    // 线程内复用的字节缓冲区
+    private static final class Buffer {
+        byte[] bytes = new byte[256];
+        int position;
+
+        void reset() {
+            if (bytes.length > 64 * 1024) {
+                bytes = new byte[256];
+            }
+            position = 0;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (bytes.length < capacity) {
+                bytes = java.util.Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(position + 1);
+            bytes[position++] = value;
+        }
+
+        void writeBytes(byte[] value) {
+            ensureCapacity(position + value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(position + 10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+    }
+}
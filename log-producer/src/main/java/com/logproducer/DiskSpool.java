@@ -0,0 +1,690 @@
+package com.logproducer;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// 本地磁盘缓冲（store-and-forward）：broker 不可用或发送超时时，设备把日志追加到磁盘，由后台线程在 broker 恢复后按顺序补发
+// - 缓冲由多个只追加的段文件组成（segment-序号.spool），写满 segmentBytes 后新建一段；总大小超过 maxBytes 时删除最旧的段（丢弃最旧的日志）
+// - 记录格式：长度(int) + CRC32(int) + 设备ID(int) + 首次发送时间(long, epoch 微秒) + 日志条数(int) + 依次排列的 时间戳/级别/内容
+//   字符串为 长度(int, -1 表示 null) + UTF-8 字节；重启时逐条校验，进程崩溃时写了一半的记录被截掉
+// - 缓冲中有未补发的日志时（BACKLOGGED），所有设备都继续写入缓冲而不直接发送，保证同一设备的日志按生成顺序到达
+// - 最后一轮补发在锁外发送（FINAL_DRAINING），期间设备不会因等锁而等待 broker：这一轮中有日志的设备把新日志暂存在内存中，
+//   发送成功后由设备线程先于新日志发送；发送失败时暂存的日志追加到缓冲中这一轮记录之后，重新进入补发；
+//   其他设备期间发送失败写入缓冲后，同样改为暂存，其日志不会越过缓冲中的记录
+// - 补发时连续读取多条记录，同一设备的日志按顺序合并成一个批量信封，减少逐条等待 broker 确认的往返
+// - 补发进度（段序号和段内位置）定期写入 position 文件，重启后从该位置继续；一轮补发中途失败或在补发和保存进度之间退出时，
+//   之后会重复补发少量日志（至少一次）
+// - 追加只写入操作系统页缓存，不逐条 fsync：进程崩溃不丢数据，主机掉电可能丢失最近写入的日志
+public class DiskSpool {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String POSITION_FILE = "position"; // 补发进度：段序号 段内位置
+    private static final int HEADER_SIZE = 8; // 记录头：长度 + CRC32
+    private static final int MAX_RECORD_SIZE = 64 << 20; // 记录长度的上限，超过视为损坏
+    private static final long RETRY_INTERVAL_MS = 1000; // broker 不可用时重新连接的间隔
+    private static final long POSITION_SAVE_INTERVAL_MS = 1000; // 补发过程中保存进度的间隔
+    private static final int DRAIN_BATCH_SIZE = 1000; // 每轮补发最多读取的日志条数，按设备合并成批量信封发送
+    private static final int HANDOVER_BATCH_SIZE = 200; // 剩余不超过该条数时作为最后一轮补发，之后恢复直接发送
+
+    // 由会话创建补发的消息
+    public interface MessageBuilder {
+        Message create(Session session, int deviceId, long sendTimeMicros, List<LogMessage> logs) throws JMSException;
+    }
+
+    // 缓冲的状态
+    private enum State {
+        DIRECT, // 没有未补发的日志，设备直接发送
+        BACKLOGGED, // 缓冲中有未补发的日志，设备继续写入缓冲
+        FINAL_DRAINING // 最后一轮补发已从缓冲中取出、正在发送：其中的设备暂存新日志，其他设备直接发送
+    }
+
+    // 最后一轮补发期间设备暂存的一批日志
+    static final class HeldBatch {
+        final long sendTimeMicros; // 首次发送的时间（epoch 微秒）
+        final List<LogMessage> logs;
+
+        HeldBatch(long sendTimeMicros, List<LogMessage> logs) {
+            this.sendTimeMicros = sendTimeMicros;
+            this.logs = logs;
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition backlogCondition = lock.newCondition();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>(); // 从旧到新排列的段
+    private final Set<ProducerChannel> channels = new CopyOnWriteArraySet<>(); // 设备使用的连接，补发完成后重新连接其中断开的
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE); // 补发线程读取记录头使用（持有锁时）
+    private long totalBytes = 0; // 所有段的总字节数
+    private long nextSequence = 1; // 下一个新建段的序号
+    private long readPosition = 0; // 最旧段中下一条待补发记录的位置
+    private long readLogs = 0; // 最旧段中已补发的日志条数
+    private volatile State state = State.DIRECT; // 状态只在持有锁时修改，设备线程可以不加锁读取
+    private Set<Integer> finalDevices = Collections.emptySet(); // 最后一轮补发期间需要暂存日志的设备（持有锁时访问）
+    private final Map<Integer, List<HeldBatch>> heldBack = new HashMap<>(); // 各设备暂存、尚未取走的日志（持有锁时访问）
+    private volatile boolean hasHeldBack = false; // heldBack 是否非空，为 false 时设备线程不必加锁
+    private volatile boolean running = true;
+    private Thread drainThread;
+
+    private final AtomicLong spooledCount = new AtomicLong(); // 写入缓冲的日志条数
+    private final AtomicLong drainedCount = new AtomicLong(); // 已补发的日志条数
+    private final AtomicLong droppedCount = new AtomicLong(); // 缓冲已满时丢弃的日志条数
+
+    // 打开缓冲目录，恢复上次退出时未补发的日志
+    public DiskSpool(Path dir, long maxBytes, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        recover();
+    }
+
+    // 登记设备使用的连接：连接断开后由补发线程在补发完成时重新连接，设备线程不会因连接 broker 而阻塞
+    public void register(ProducerChannel channel) {
+        channels.add(channel);
+    }
+
+    // 缓冲中有未补发的日志（或最后一轮补发尚未完成）时，设备应通过 appendIfBacklogged 决定是否直接发送
+    public boolean isBacklogged() {
+        return state != State.DIRECT;
+    }
+
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    public long getDrainedCount() {
+        return drainedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // 当前缓冲中的总字节数（含已补发、尚未删除的部分）
+    public long getSize() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 追加一条记录（只写磁盘，不访问 broker；最后一轮补发期间可能暂存在内存中，见 appendIfBacklogged）；缓冲超过 maxBytes 时删除最旧的段
+    public void append(int deviceId, long sendTimeMicros, List<LogMessage> logs) throws IOException {
+        append(deviceId, sendTimeMicros, logs, false);
+    }
+
+    // 仅当缓冲中仍有未补发的日志时追加，返回是否已接收；返回 false 时调用方应直接发送
+    // （设备看到 isBacklogged 后等待锁期间补发线程可能刚好完成，此时不应再写入缓冲）
+    // 最后一轮补发期间，这一轮中有日志（或期间写入了缓冲）的设备的日志暂存在内存中（同样返回 true），之后通过 takeHeldBack 取回
+    public boolean appendIfBacklogged(int deviceId, long sendTimeMicros, List<LogMessage> logs) throws IOException {
+        return append(deviceId, sendTimeMicros, logs, true);
+    }
+
+    // 取出设备暂存的日志，调用方应先于新日志发送；该设备所在的最后一轮补发尚未完成或没有暂存的日志时返回 null
+    public List<HeldBatch> takeHeldBack(int deviceId) {
+        if (!hasHeldBack) {
+            return null;
+        }
+        lock.lock();
+        try {
+            if (state == State.FINAL_DRAINING && finalDevices.contains(deviceId)) {
+                return null;
+            }
+            List<HeldBatch> batches = heldBack.remove(deviceId);
+            hasHeldBack = !heldBack.isEmpty();
+            return batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean append(int deviceId, long sendTimeMicros, List<LogMessage> logs, boolean onlyIfBacklogged) throws IOException {
+        byte[] record = encode(deviceId, sendTimeMicros, logs);
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IOException("磁盘缓冲已关闭");
+            }
+            if (state == State.FINAL_DRAINING) {
+                // 这一轮中有日志的设备的日志（包括发送失败、连接断开时写入的）都暂存在内存中，排在这一轮之后
+                if (finalDevices.contains(deviceId)) {
+                    heldBack.computeIfAbsent(deviceId, id -> new ArrayList<>()).add(new HeldBatch(sendTimeMicros, logs));
+                    hasHeldBack = true;
+                    return true;
+                }
+                if (onlyIfBacklogged) {
+                    return false;
+                }
+                // 其他设备发送失败时写入缓冲，之后该设备的日志也要暂存，不能先于缓冲中的这条记录直接发送
+                write(record, logs.size());
+                finalDevices.add(deviceId);
+                return true;
+            }
+            if (onlyIfBacklogged && state == State.DIRECT) {
+                return false;
+            }
+            write(record, logs.size());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 把一条记录写入最新的段（持有锁时调用）；最后一轮补发期间写入的记录在这一轮结束后继续补发
+    private void write(byte[] record, int logCount) throws IOException {
+        Segment tail = segments.peekLast();
+        if (tail == null || (tail.size > 0 && tail.size + record.length > segmentBytes)) {
+            tail = newSegment();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            tail.channel.write(buffer, tail.size + buffer.position());
+        }
+        tail.size += record.length;
+        tail.logCount += logCount;
+        totalBytes += record.length;
+        spooledCount.addAndGet(logCount);
+        while (totalBytes > maxBytes && segments.size() > 1) {
+            dropOldest();
+        }
+        if (state == State.DIRECT) {
+            state = State.BACKLOGGED;
+            System.out.println("broker 不可用或发送超时，日志写入磁盘缓冲 " + dir);
+        }
+        backlogCondition.signal();
+    }
+
+    // 把各设备暂存的日志按顺序写入缓冲（持有锁时调用）：最后一轮补发失败或关闭时，暂存的日志排在缓冲中已有的日志之后
+    private void spillHeldBack() throws IOException {
+        for (Map.Entry<Integer, List<HeldBatch>> entry : heldBack.entrySet()) {
+            for (HeldBatch batch : entry.getValue()) {
+                write(encode(entry.getKey(), batch.sendTimeMicros, batch.logs), batch.logs.size());
+            }
+        }
+        heldBack.clear();
+        hasHeldBack = false;
+    }
+
+    // 启动补发线程，通过 channel（可重连的连接）补发缓冲中的日志
+    public void startDraining(ProducerChannel channel, MessageBuilder builder) {
+        drainThread = new Thread(() -> drainLoop(channel, builder), "disk-spool-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    // 停止补发线程，保存补发进度并关闭段文件；之后的追加会失败
+    public void close() throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            backlogCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (drainThread != null) {
+            drainThread.join(RETRY_INTERVAL_MS * 5);
+        }
+        lock.lock();
+        try {
+            spillHeldBack(); // 设备尚未取走的暂存日志留到下次启动时补发
+            savePosition();
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 补发线程：等待缓冲中出现日志；broker 可用时按顺序补发，全部补发并重新连接设备的连接后恢复直接发送
+    private void drainLoop(ProducerChannel channel, MessageBuilder builder) {
+        while (running) {
+            lock.lock();
+            try {
+                while (running && state != State.BACKLOGGED) {
+                    backlogCondition.await();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (!running) {
+                break;
+            }
+
+            try {
+                if (channel.isBroken()) {
+                    channel.reconnect();
+                }
+                // 先重新连接设备的连接，补发到缓冲为空时即可恢复直接发送
+                for (ProducerChannel deviceChannel : channels) {
+                    if (deviceChannel.isBroken()) {
+                        deviceChannel.reconnect();
+                    }
+                }
+                drain(channel, builder);
+            } catch (JMSException | IOException e) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL_MS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+        try {
+            channel.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 按写入顺序补发记录，直到缓冲中没有未补发的记录（此时已恢复直接发送）；发送失败时抛出异常，下次从同一轮的第一条记录继续
+    // 设备持续写入时缓冲很难恰好为空：读到缓冲末尾且剩余不超过 HANDOVER_BATCH_SIZE 条时，取出最后一轮并进入 FINAL_DRAINING，
+    // 在锁外发送；这一轮中有日志的设备在发送完成前暂存新日志，设备的日志不会先于缓冲中的日志到达，设备线程也不会等待 broker
+    private void drain(ProducerChannel channel, MessageBuilder builder) throws JMSException, IOException {
+        long lastSaveTime = System.currentTimeMillis();
+        while (running) {
+            List<Record> records;
+            lock.lock();
+            try {
+                records = readNext();
+                if (records.isEmpty()) {
+                    state = State.DIRECT;
+                    savePosition();
+                    System.out.println("磁盘缓冲补发完成，累计补发 " + drainedCount.get() + " 条日志，恢复直接发送");
+                    return;
+                }
+                if (isHandover(records)) {
+                    finalDevices = new HashSet<>();
+                    for (Record record : records) {
+                        finalDevices.add(record.deviceId);
+                    }
+                    state = State.FINAL_DRAINING;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (state == State.FINAL_DRAINING) {
+                finishDrain(channel, builder, records);
+                return;
+            }
+            send(channel, builder, records);
+            commit(records);
+            if (System.currentTimeMillis() - lastSaveTime >= POSITION_SAVE_INTERVAL_MS) {
+                lock.lock();
+                try {
+                    savePosition();
+                } finally {
+                    lock.unlock();
+                }
+                lastSaveTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    // 在锁外发送最后一轮：成功后恢复直接发送（期间又有日志写入缓冲时继续补发），暂存的日志交给各设备线程先行发送；
+    // 失败时这一轮的记录仍在缓冲中，暂存的日志追加在其后，回到 BACKLOGGED
+    private void finishDrain(ProducerChannel channel, MessageBuilder builder, List<Record> records) throws JMSException, IOException {
+        try {
+            send(channel, builder, records);
+        } catch (JMSException e) {
+            lock.lock();
+            try {
+                state = State.BACKLOGGED;
+                finalDevices = Collections.emptySet();
+                spillHeldBack();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+        lock.lock();
+        try {
+            commit(records);
+            finalDevices = Collections.emptySet();
+            state = hasUnread() ? State.BACKLOGGED : State.DIRECT;
+            savePosition();
+        } finally {
+            lock.unlock();
+        }
+        if (state == State.DIRECT) {
+            System.out.println("磁盘缓冲补发完成，累计补发 " + drainedCount.get() + " 条日志，恢复直接发送");
+        }
+    }
+
+    // 按设备合并（保持各设备内的顺序）发送，发送时间取该设备最早的一条记录
+    private static void send(ProducerChannel channel, MessageBuilder builder, List<Record> records) throws JMSException {
+        Map<Integer, List<LogMessage>> logsByDevice = new LinkedHashMap<>();
+        Map<Integer, Long> sendTimes = new HashMap<>();
+        for (Record record : records) {
+            logsByDevice.computeIfAbsent(record.deviceId, id -> new ArrayList<>()).addAll(record.logs);
+            sendTimes.putIfAbsent(record.deviceId, record.sendTimeMicros);
+        }
+        for (Map.Entry<Integer, List<LogMessage>> entry : logsByDevice.entrySet()) {
+            long sendTimeMicros = sendTimes.get(entry.getKey());
+            channel.send(session -> builder.create(session, entry.getKey(), sendTimeMicros, entry.getValue()));
+        }
+    }
+
+    // 是否为最后一轮：读到了最新段的末尾，且日志条数不多（持有锁时调用）
+    private boolean isHandover(List<Record> records) {
+        Record last = records.get(records.size() - 1);
+        if (last.segment != segments.peekLast() || last.end != last.segment.size) {
+            return false;
+        }
+        int logCount = 0;
+        for (Record record : records) {
+            logCount += record.logs.size();
+        }
+        return logCount <= HANDOVER_BATCH_SIZE;
+    }
+
+    // 从最旧的段连续读取待补发的记录，最多约 DRAIN_BATCH_SIZE 条日志；没有时返回空列表
+    private List<Record> readNext() throws IOException {
+        lock.lock();
+        try {
+            deleteDrainedSegments();
+            List<Record> records = new ArrayList<>();
+            Segment head = segments.peekFirst();
+            long position = readPosition;
+            int logCount = 0;
+            while (head != null && position < head.size && logCount < DRAIN_BATCH_SIZE) {
+                header.clear();
+                readFully(head.channel, header, position);
+                int length = header.getInt(0);
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(head.channel, body, position + HEADER_SIZE);
+                Record record = decode(head, position, position + HEADER_SIZE + length, body.array());
+                records.add(record);
+                logCount += record.logs.size();
+                position = record.end;
+            }
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 一轮记录补发成功，推进补发位置；补发期间该段已因缓冲满被删除时不做处理
+    private void commit(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        Record first = records.get(0);
+        Record last = records.get(records.size() - 1);
+        lock.lock();
+        try {
+            if (segments.peekFirst() == first.segment && readPosition == first.start) {
+                int logCount = 0;
+                for (Record record : records) {
+                    logCount += record.logs.size();
+                }
+                readPosition = last.end;
+                readLogs += logCount;
+                drainedCount.addAndGet(logCount);
+                deleteDrainedSegments();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasUnread() {
+        Segment head = segments.peekFirst();
+        return head != null && (readPosition < head.size || segments.size() > 1);
+    }
+
+    // 删除已全部补发的旧段（仍在写入的最新段保留）
+    private void deleteDrainedSegments() throws IOException {
+        while (segments.size() > 1 && readPosition >= segments.peekFirst().size) {
+            deleteHead();
+        }
+    }
+
+    // 缓冲已满：删除最旧的段，其中未补发的日志计入丢弃数
+    private void dropOldest() throws IOException {
+        long dropped = segments.peekFirst().logCount - readLogs;
+        deleteHead();
+        if (dropped > 0) {
+            droppedCount.addAndGet(dropped);
+            System.out.println("磁盘缓冲已满（上限 " + maxBytes + " 字节），丢弃最旧的 " + dropped + " 条日志");
+        }
+    }
+
+    private void deleteHead() throws IOException {
+        Segment head = segments.pollFirst();
+        head.channel.close();
+        Files.deleteIfExists(head.path);
+        totalBytes -= head.size;
+        readPosition = 0;
+        readLogs = 0;
+    }
+
+    private Segment newSegment() throws IOException {
+        Path path = dir.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        Segment segment = new Segment(nextSequence++, path);
+        segment.channel.truncate(0);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    // 打开已有的段并校验记录，截掉末尾不完整的记录，然后按 position 文件恢复补发位置
+    private void recover() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                sequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(sequences);
+
+        long positionSequence = 0;
+        long position = 0;
+        Path positionFile = dir.resolve(POSITION_FILE);
+        if (Files.exists(positionFile)) {
+            String content = Files.readString(positionFile).trim();
+            try {
+                String[] parts = content.split(" ");
+                positionSequence = Long.parseLong(parts[0]);
+                position = Long.parseLong(parts[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                // 进度文件损坏（如写入时断电）时从最早的段重新补发，可能重复发送，不会丢失
+                System.out.println("磁盘缓冲进度文件 " + positionFile + " 无法解析（" + content + "），从最早的段开始补发");
+                positionSequence = 0;
+                position = 0;
+            }
+        }
+
+        for (long sequence : sequences) {
+            Path path = dir.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+            if (sequence < positionSequence) {
+                Files.delete(path); // 已全部补发
+                continue;
+            }
+            Segment segment = new Segment(sequence, path);
+            long end = scan(segment, Long.MAX_VALUE);
+            if (end < segment.channel.size()) {
+                System.out.println("磁盘缓冲 " + path + " 末尾有不完整的记录，已截断到 " + end + " 字节");
+                segment.channel.truncate(end);
+            }
+            segment.size = end;
+            segments.addLast(segment);
+            totalBytes += end;
+            nextSequence = sequence + 1;
+        }
+
+        Segment head = segments.peekFirst();
+        if (head != null && head.sequence == positionSequence && position <= head.size) {
+            readPosition = position;
+            readLogs = scanLogCount(head, position);
+        }
+        state = hasUnread() ? State.BACKLOGGED : State.DIRECT;
+        if (state == State.BACKLOGGED) {
+            long pending = -readLogs;
+            for (Segment segment : segments) {
+                pending += segment.logCount;
+            }
+            System.out.println("磁盘缓冲中有 " + pending + " 条上次未补发的日志，broker 可用后补发");
+        }
+    }
+
+    // 从头校验段中的记录，返回最后一条完整记录的结束位置，同时统计日志条数
+    private long scan(Segment segment, long limit) throws IOException {
+        ByteBuffer recordHeader = ByteBuffer.allocate(HEADER_SIZE);
+        long size = segment.channel.size();
+        long position = 0;
+        segment.logCount = 0;
+        while (position + HEADER_SIZE <= size && position < limit) {
+            recordHeader.clear();
+            readFully(segment.channel, recordHeader, position);
+            int length = recordHeader.getInt(0);
+            if (length <= 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(segment.channel, body, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != recordHeader.getInt(4)) {
+                break;
+            }
+            segment.logCount += ByteBuffer.wrap(body.array()).getInt(12);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    // 段中 limit 之前的日志条数（scan 会覆盖 logCount，这里恢复整段的条数）
+    private long scanLogCount(Segment segment, long limit) throws IOException {
+        long total = segment.logCount;
+        scan(segment, limit);
+        long count = segment.logCount;
+        segment.logCount = total;
+        return count;
+    }
+
+    // 保存补发进度（持有锁时调用），先写临时文件再原子地替换
+    private void savePosition() throws IOException {
+        Segment head = segments.peekFirst();
+        String position = head != null ? head.sequence + " " + readPosition : (nextSequence - 1) + " 0";
+        Path tempFile = dir.resolve(POSITION_FILE + ".tmp");
+        Files.writeString(tempFile, position);
+        Files.move(tempFile, dir.resolve(POSITION_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encode(int deviceId, long sendTimeMicros, List<LogMessage> logs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + 64 * logs.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(0); // 记录头占位
+        out.writeInt(deviceId);
+        out.writeLong(sendTimeMicros);
+        out.writeInt(logs.size());
+        for (LogMessage log : logs) {
+            writeString(out, log.getTimestamp());
+            writeString(out, log.getLog_level());
+            writeString(out, log.getMessage());
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE);
+        ByteBuffer.wrap(record).putInt(record.length - HEADER_SIZE).putInt((int) crc.getValue());
+        return record;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Record decode(Segment segment, long start, long end, byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        int deviceId = buffer.getInt();
+        long sendTimeMicros = buffer.getLong();
+        int count = buffer.getInt();
+        List<LogMessage> logs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            logs.add(new LogMessage(deviceId, readString(buffer), readString(buffer), readString(buffer)));
+        }
+        return new Record(segment, start, end, deviceId, sendTimeMicros, logs);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("磁盘缓冲记录不完整");
+            }
+        }
+    }
+
+    // 一个段文件
+    private static class Segment {
+        final long sequence;
+        final Path path;
+        final FileChannel channel;
+        long size = 0; // 已写入的完整记录的字节数
+        long logCount = 0; // 段中的日志条数
+
+        Segment(long sequence, Path path) throws IOException {
+            this.sequence = sequence;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    // 一条待补发的记录，start/end 为其在段中的位置
+    private static class Record {
+        final Segment segment;
+        final long start;
+        final long end;
+        final int deviceId;
+        final long sendTimeMicros;
+        final List<LogMessage> logs;
+
+        Record(Segment segment, long start, long end, int deviceId, long sendTimeMicros, List<LogMessage> logs) {
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+            this.deviceId = deviceId;
+            this.sendTimeMicros = sendTimeMicros;
+            this.logs = logs;
+        }
+    }
+}
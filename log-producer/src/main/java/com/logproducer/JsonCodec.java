@@ -0,0 +1,106 @@
+package com.logproducer;
+
+import java.util.List;
+
+// 日志消息的 JSON 编码
+// 复用线程内的 StringBuilder 拼接，字符串字段按 JSON 规范转义
+public final class JsonCodec {
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024; // 复用缓冲区的最大保留容量
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private JsonCodec() {
+    }
+
+    // ---------------- LogMessage ----------------
+
+    public static String writeLogMessage(LogMessage logMessage) {
+        StringBuilder sb = buffer();
+        appendLogMessage(sb, logMessage);
+        return sb.toString();
+    }
+
+    // 批量信封：日志对象组成的 JSON 数组
+    public static String writeLogBatch(List<LogMessage> logMessages) {
+        StringBuilder sb = buffer();
+        sb.append('[');
+        for (int i = 0; i < logMessages.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendLogMessage(sb, logMessages.get(i));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static void appendLogMessage(StringBuilder sb, LogMessage logMessage) {
+        sb.append("{\"device_id\":").append(logMessage.getDevice_id());
+        appendString(sb, "timestamp", logMessage.getTimestamp());
+        appendString(sb, "log_level", logMessage.getLog_level());
+        appendString(sb, "message", logMessage.getMessage());
+        sb.append('}');
+    }
+
+    // ---------------- 工具方法 ----------------
+
+    private static StringBuilder buffer() {
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            sb = new StringBuilder(256);
+            BUFFER.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    // 写出 ,"name":"value"（value 为 null 时写出 null）
+    private static void appendString(StringBuilder sb, String name, String value) {
+        sb.append(",\"").append(name).append("\":");
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        appendEscaped(sb, value);
+        sb.append('"');
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            sb.append(value, start, i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    sb.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    break;
+            }
+            start = i + 1;
+        }
+        sb.append(value, start, length);
+    }
+}
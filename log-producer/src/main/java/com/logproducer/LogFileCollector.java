@@ -0,0 +1,427 @@
+package com.logproducer;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 日志文件采集模式：跟踪一组文件或目录，把新写入的日志行解析后发送到日志队列，替代随机生成的日志
+// - 通过 WatchService 发现新文件、文件轮转和删除，同时按 POLL_INTERVAL_MS 定期检查，不依赖事件一定到达
+// - 通过 FileChannel 从上次的位置读取新增的字节到复用的缓冲区，不把整个文件读入内存
+// - 每个文件对应一台设备（从文件名中提取设备ID），每次读取后按设备打包成批量信封发送
+// - 已发送的读取位置连同文件标识定期写入 OFFSET_FILE，重启后从该位置继续；文件被轮转或截断时从头读取新文件
+//   位置在发送之后保存，进程在两者之间退出时重启后最多重新发送 OFFSET_SAVE_INTERVAL_MS 内的日志
+//
+// 启动：mvn exec:java -Dexec.mainClass="com.logproducer.LogFileCollector" -Dexec.args="要采集的文件或目录 ..."
+public class LogFileCollector {
+    private static final String BROKER_URL = "tcp://localhost:61616"; // ActiveMQ 服务器地址
+    private static final String QUEUE_NAME = "LogQueue"; // 日志队列名称
+    private static final String[] WATCH_PATHS = {"logs"}; // 默认采集的文件或目录（目录下匹配 FILE_GLOB 的文件），可由命令行参数覆盖
+    private static final String FILE_GLOB = "glob:*.log"; // 目录中需要采集的文件名；轮转后的旧文件名（如 app.log.1）不应匹配
+    private static final Pattern DEVICE_ID_PATTERN = Pattern.compile("(\\d+)"); // 从文件名中提取设备ID（第一个分组）
+    private static final Pattern LINE_PATTERN = Pattern.compile(
+            "^(?<timestamp>\\d{4}-\\d{2}-\\d{2}[ T]\\d{2}:\\d{2}:\\d{2})\\S*\\s+\\[?(?<level>[A-Za-z]+)\\]?\\s+(?<message>.*)$"); // 日志行格式，需包含 timestamp、level、message 三个命名分组
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss"; // 日志行中时间戳的格式，与发送格式不同时会转换
+    private static final String OFFSET_FILE = "collector-offsets.properties"; // 保存各文件读取位置的文件
+    private static final boolean START_AT_END = false; // 没有保存位置的已有文件是否从末尾开始（只采集之后写入的内容）
+    private static final int READ_BUFFER_SIZE = 1 << 20; // 每次从文件读取的最大字节数，单行超过该长度时截断
+    private static final int BATCH_SIZE = 500; // 每个批量信封最多包含的日志条数
+    private static final long POLL_INTERVAL_MS = 200; // 没有文件事件时检查文件变化的间隔
+    private static final long OFFSET_SAVE_INTERVAL_MS = 1000; // 保存读取位置的间隔
+    private static final int REPORT_INTERVAL_SECONDS = 10; // 输出采集速率的间隔
+    private static final boolean BINARY_WIRE_FORMAT = false; // 是否以二进制格式（BytesMessage）发送日志
+    private static final String SEND_TIME_PROPERTY = "send_time_us"; // 消息发送时间（epoch 微秒），供分析器统计到达延迟
+    private static final DateTimeFormatter OUTPUT_TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ProducerChannel channel;
+    private final List<Path> watchPaths;
+    private final Path offsetFile;
+    private final WatchService watcher;
+    private final PathMatcher fileMatcher = FileSystems.getDefault().getPathMatcher(FILE_GLOB);
+    private final DateTimeFormatter inputTimestampFormatter = DateTimeFormatter.ofPattern(TIMESTAMP_FORMAT);
+    private final boolean convertTimestamp = !TIMESTAMP_FORMAT.equals("yyyy-MM-dd HH:mm:ss");
+    private final Matcher lineMatcher = LINE_PATTERN.matcher("");
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE); // 读取缓冲区，直接在其数组上切分行
+
+    private final Set<Path> watchedDirs = new HashSet<>(); // 按 FILE_GLOB 采集其中文件的目录
+    private final Set<Path> watchedFiles = new HashSet<>(); // 单独指定的文件
+    private final Set<Path> registeredDirs = new HashSet<>(); // 已注册到 WatchService 的目录
+    private final Map<Path, TailedFile> files = new LinkedHashMap<>(); // 正在跟踪的文件
+    private final Properties savedOffsets = new Properties(); // 启动时读取的位置：路径 -> 文件标识,位置
+
+    private volatile boolean running = true;
+    private long bytesRead = 0; // 已读取的字节数
+    private long linesSent = 0; // 已发送的日志条数
+    private long linesSkipped = 0; // 不符合 LINE_PATTERN 或时间戳无法解析的行数（如异常堆栈的后续行）
+    private boolean rescanNeeded = false; // 有文件因读取出错停止跟踪，下一轮重新扫描
+
+    public LogFileCollector(String brokerUrl, List<Path> watchPaths, Path offsetFile) throws JMSException, IOException {
+        this.channel = new ProducerChannel(brokerUrl, QUEUE_NAME);
+        this.watchPaths = watchPaths;
+        this.offsetFile = offsetFile;
+        this.watcher = FileSystems.getDefault().newWatchService();
+    }
+
+    // 停止采集，run() 在当前一轮读取结束后保存位置并返回
+    public void stop() {
+        running = false;
+    }
+
+    public void run() throws IOException, JMSException, InterruptedException {
+        loadOffsets();
+        for (Path path : watchPaths) {
+            addWatchPath(path.toAbsolutePath().normalize());
+        }
+        System.out.println("开始采集 " + files.size() + " 个日志文件：" + watchPaths);
+
+        long lastSaveTime = System.currentTimeMillis();
+        long lastReportTime = lastSaveTime;
+        long lastReportedBytes = 0;
+        long lastReportedLines = 0;
+        while (running) {
+            // 等待文件事件，最多等待 POLL_INTERVAL_MS；之后无论是否有事件都检查所有文件
+            WatchKey key = watcher.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            while (key != null) {
+                handleEvents(key);
+                key = watcher.poll();
+            }
+            for (TailedFile file : new ArrayList<>(files.values())) {
+                try {
+                    pump(file);
+                } catch (IOException e) {
+                    // 检查过程中文件被轮转或删除等，只影响这一个文件
+                    untrack(file, e);
+                }
+            }
+            if (rescanNeeded) {
+                rescanNeeded = false;
+                rescan();
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastSaveTime >= OFFSET_SAVE_INTERVAL_MS) {
+                saveOffsets();
+                lastSaveTime = now;
+            }
+            if (now - lastReportTime >= REPORT_INTERVAL_SECONDS * 1000L) {
+                double seconds = (now - lastReportTime) / 1000.0;
+                System.out.printf("采集速率：%.1f MB/s，%.0f 条/s（文件 %d 个，累计发送 %d 条，跳过 %d 行）%n",
+                        (bytesRead - lastReportedBytes) / seconds / (1 << 20), (linesSent - lastReportedLines) / seconds,
+                        files.size(), linesSent, linesSkipped);
+                lastReportTime = now;
+                lastReportedBytes = bytesRead;
+                lastReportedLines = linesSent;
+            }
+        }
+
+        saveOffsets();
+        for (TailedFile file : files.values()) {
+            file.close();
+        }
+        watcher.close();
+        channel.close();
+    }
+
+    // 添加一个采集路径：目录采集其中匹配 FILE_GLOB 的文件，文件单独采集（可以暂不存在）；都通过所在目录的 WatchService 监听
+    private void addWatchPath(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            watchedDirs.add(path);
+            register(path);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    if (Files.isRegularFile(entry) && fileMatcher.matches(entry.getFileName())) {
+                        track(entry, true);
+                    }
+                }
+            }
+        } else {
+            watchedFiles.add(path);
+            register(path.getParent());
+            if (Files.isRegularFile(path)) {
+                track(path, true);
+            }
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        if (registeredDirs.add(dir)) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        }
+    }
+
+    private boolean isWanted(Path path) {
+        return watchedFiles.contains(path) || (watchedDirs.contains(path.getParent()) && fileMatcher.matches(path.getFileName()));
+    }
+
+    // 处理一个目录的文件事件：发现新文件时开始跟踪；修改、删除和轮转在随后的 pump 中处理
+    private void handleEvents(WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescan(); // 事件过多被丢弃，重新扫描所有目录
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && !files.containsKey(path)
+                    && isWanted(path) && Files.isRegularFile(path)) {
+                track(path, false);
+            }
+        }
+        key.reset();
+    }
+
+    private void rescan() {
+        for (Path dir : watchedDirs) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (!files.containsKey(entry) && Files.isRegularFile(entry) && fileMatcher.matches(entry.getFileName())) {
+                        track(entry, false);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("扫描目录失败：" + dir + "，" + e);
+            }
+        }
+        for (Path path : watchedFiles) {
+            if (!files.containsKey(path) && Files.isRegularFile(path)) {
+                track(path, false);
+            }
+        }
+    }
+
+    // 开始跟踪一个文件：同一文件（标识一致）有保存的位置时从该位置继续，否则从头（或启动时按 START_AT_END 从末尾）开始
+    // 文件在此期间被删除或无法打开时忽略，重新出现时由 ENTRY_CREATE 事件再次跟踪
+    private void track(Path path, boolean atStartup) {
+        Matcher matcher = DEVICE_ID_PATTERN.matcher(path.getFileName().toString());
+        int deviceId;
+        try {
+            deviceId = matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+        } catch (NumberFormatException e) {
+            deviceId = -1; // 数字超出 int 范围
+        }
+        if (deviceId < 0) {
+            System.out.println("无法从文件名中提取设备ID，已忽略：" + path);
+            return;
+        }
+        TailedFile file = new TailedFile(path, deviceId);
+        try {
+            long position = atStartup && START_AT_END ? Files.size(path) : 0;
+            String saved = savedOffsets.getProperty(path.toString());
+            if (saved != null) {
+                int comma = saved.lastIndexOf(',');
+                long savedPosition = Long.parseLong(saved.substring(comma + 1));
+                if (saved.substring(0, comma).equals(TailedFile.fileKey(path)) && savedPosition <= Files.size(path)) {
+                    position = savedPosition;
+                }
+            }
+            file.open(position);
+            files.put(path, file);
+            System.out.println("开始采集 " + path + "（设备 " + deviceId + "，从位置 " + position + " 开始）");
+        } catch (IOException e) {
+            closeQuietly(file);
+            System.out.println("无法打开文件，已忽略：" + path + "，" + e);
+        }
+    }
+
+    // 读取出错的文件：发送已读取的日志，记下读取位置后停止跟踪，下一轮重新扫描时若文件仍在（标识不变）则从该位置继续
+    private void untrack(TailedFile file, IOException e) throws JMSException {
+        flush(file);
+        Path path = file.getPath();
+        if (file.getFileKey() != null) {
+            savedOffsets.setProperty(path.toString(), file.getFileKey() + "," + file.getPosition());
+        }
+        closeQuietly(file);
+        files.remove(path);
+        rescanNeeded = true;
+        System.out.println("读取文件出错，暂停采集：" + path + "，" + e);
+    }
+
+    private static void closeQuietly(TailedFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // 文件已不可用，忽略
+        }
+    }
+
+    // 读取文件新增的内容并发送，然后检查文件是否被轮转、截断或删除
+    private void pump(TailedFile file) throws IOException, JMSException {
+        readAvailable(file);
+        flush(file);
+
+        Path path = file.getPath();
+        if (!Files.exists(path)) {
+            // 文件已删除：旧文件的剩余内容已经读完，停止跟踪
+            file.close();
+            files.remove(path);
+            System.out.println("文件已删除，停止采集：" + path);
+            return;
+        }
+        if (!TailedFile.fileKey(path).equals(file.getFileKey())) {
+            // 原路径上是一个新文件（轮转），旧文件的剩余内容已经读完，从头读取新文件
+            file.close();
+            file.open(0);
+            System.out.println("文件已轮转，从头读取新文件：" + path);
+            readAvailable(file);
+            flush(file);
+        } else if (Files.size(path) < file.getPosition()) {
+            // 文件被截断（copytruncate 方式轮转），从头读取
+            file.setPosition(0);
+            System.out.println("文件已截断，从头读取：" + path);
+        }
+    }
+
+    // 从当前位置读取到文件末尾的所有完整行；末尾未写完的行留到下一次读取
+    private void readAvailable(TailedFile file) throws IOException, JMSException {
+        byte[] bytes = buffer.array();
+        while (true) {
+            buffer.clear();
+            int read = file.getChannel().read(buffer, file.getPosition());
+            if (read <= 0) {
+                return;
+            }
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    parseLine(file, bytes, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart == 0) {
+                if (read < bytes.length) {
+                    return; // 只有一行未写完的内容
+                }
+                parseLine(file, bytes, 0, read); // 单行超过缓冲区大小，截断后作为一行处理
+                lineStart = read;
+            }
+            file.setPosition(file.getPosition() + lineStart);
+            bytesRead += lineStart;
+        }
+    }
+
+    // 解析 bytes[start, end) 中的一行，符合 LINE_PATTERN 的加入文件的批次
+    private void parseLine(TailedFile file, byte[] bytes, int start, int end) throws JMSException {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+        String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        if (!lineMatcher.reset(line).matches()) {
+            linesSkipped++;
+            return;
+        }
+        String timestamp = lineMatcher.group("timestamp");
+        if (convertTimestamp) {
+            try {
+                timestamp = LocalDateTime.parse(timestamp, inputTimestampFormatter).format(OUTPUT_TIMESTAMP_FORMATTER);
+            } catch (DateTimeParseException e) {
+                linesSkipped++; // 与不符合 LINE_PATTERN 的行一样跳过
+                return;
+            }
+        } else if (timestamp.charAt(10) == 'T') {
+            timestamp = timestamp.replace('T', ' ');
+        }
+        file.getBatch().add(new LogMessage(file.getDeviceId(), timestamp, normalizeLevel(lineMatcher.group("level")),
+                lineMatcher.group("message")));
+        if (file.getBatch().size() >= BATCH_SIZE) {
+            flush(file);
+        }
+    }
+
+    // 统一日志级别的写法：分析器只区分 ERROR、WARN，其他级别按 INFO 统计
+    private static String normalizeLevel(String level) {
+        String upper = level.toUpperCase(Locale.ROOT);
+        switch (upper) {
+            case "WARNING":
+                return "WARN";
+            case "ERR":
+            case "FATAL":
+            case "CRITICAL":
+                return "ERROR";
+            default:
+                return upper;
+        }
+    }
+
+    // 将文件已读取的日志打包成一个批量信封发送
+    private void flush(TailedFile file) throws JMSException {
+        List<LogMessage> batch = file.getBatch();
+        if (batch.isEmpty()) {
+            return;
+        }
+        channel.send(session -> {
+            Message message = BINARY_WIRE_FORMAT
+                    ? BinaryCodec.createLogBatch(session, batch)
+                    : session.createTextMessage(JsonCodec.writeLogBatch(batch));
+            message.setIntProperty("device_id", file.getDeviceId());
+            message.setIntProperty("batch_size", batch.size());
+            message.setLongProperty(SEND_TIME_PROPERTY, currentTimeMicros());
+            return message;
+        });
+        linesSent += batch.size();
+        batch.clear();
+    }
+
+    private void loadOffsets() throws IOException {
+        if (Files.exists(offsetFile)) {
+            try (InputStream in = Files.newInputStream(offsetFile)) {
+                savedOffsets.load(in);
+            }
+        }
+    }
+
+    // 保存所有文件的读取位置（每次保存前批次都已发送），先写临时文件再原子地替换
+    private void saveOffsets() throws IOException {
+        Properties offsets = new Properties();
+        for (TailedFile file : files.values()) {
+            offsets.setProperty(file.getPath().toString(), file.getFileKey() + "," + file.getPosition());
+        }
+        Path tempFile = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            offsets.store(out, "log-producer collector offsets");
+        }
+        Files.move(tempFile, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 当前时间的 epoch 微秒（JMS 自带的 JMSTimestamp 只有毫秒精度）
+    private static long currentTimeMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Path> paths = new ArrayList<>();
+        for (String path : args.length > 0 ? args : WATCH_PATHS) {
+            paths.add(Paths.get(path));
+        }
+        LogFileCollector collector = new LogFileCollector(BROKER_URL, paths, Paths.get(OFFSET_FILE));
+
+        // 退出时等待当前一轮读取结束并保存读取位置
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            collector.stop();
+            try {
+                mainThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        collector.run();
+    }
+}
@@ -46,11 +46,8 @@ public class LogMessage {
         this.message = message;
     }
 
-    // 将对象转换为JSON字符串
+    // 将对象转换为JSON字符串（字符串字段会被正确转义）
     public String toJson() {
-        return String.format(
-                "{\"device_id\":%d,\"timestamp\":\"%s\",\"log_level\":\"%s\",\"message\":\"%s\"}",
-                this.device_id, this.timestamp, this.log_level, this.message
-        );
+        return JsonCodec.writeLogMessage(this);
     }
 }
\ No newline at end of file
@@ -1,11 +1,23 @@
 package com.logproducer;
 
 import jakarta.jms.*;
-import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.AsyncCallback;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LogProducer {
 
@@ -13,6 +25,28 @@ public class LogProducer {
     private static final String QUEUE_NAME = "LogQueue"; // 使用队列模式
     private static final int T = 100; //配置多少ms发布一条日志
     private static final int N = 8; //设备有N台
+    // 批量模式只合并同一台设备的日志（信封带 device_id 属性，分析器按它分区），一个信封最多包含 M 毫秒内该设备生成的日志：
+    // 间隔 T 不小于 M 时每个信封仍只有一条日志，批量只对单台设备生成频率高于每 M 毫秒一条的场景有效；
+    // 大量低频设备的总吞吐由共享连接（SHARED_CONNECTIONS）和异步发送（ASYNC_SEND）提高，而不是批量
+    private static final int BATCH_SIZE = 1; // 批量模式下每个信封最多打包的日志条数（K），1 表示逐条发送
+    private static final int BATCH_LINGER_MS = 50; // 批量模式下信封中第一条日志最多等待的毫秒数（M），等待下一条日志期间到期即发送
+    private static final boolean BINARY_WIRE_FORMAT = false; // 是否以二进制格式（BytesMessage）发送日志，分析器两种格式均可识别
+    private static final String SEND_TIME_PROPERTY = "send_time_us"; // 消息发送时间（epoch 微秒），供分析器统计到达延迟
+    private static final boolean SHARED_CONNECTIONS = false; // 大规模模拟模式：每台设备一个虚拟线程，所有设备共享 CONNECTION_POOL_SIZE 个连接
+    private static final int CONNECTION_POOL_SIZE = 4; // 大规模模拟模式下共享的连接（会话）数，设备按 ID 固定使用其中一个
+    private static final int GLOBAL_RATE = 0; // 全部设备合计每秒最多发送的日志条数（令牌桶限速），0 表示只受每台设备的间隔 T 限制
+    private static final boolean VERBOSE = true; // 是否逐条打印发送的日志；关闭后只每隔 REPORT_INTERVAL_SECONDS 秒输出一次发送汇总
+    private static final int REPORT_INTERVAL_SECONDS = 5; // 大规模模拟模式下输出发送汇总的间隔
+    private static final boolean ASYNC_SEND = false; // 异步发送：不等待 broker 确认即继续生成下一条，确认和失败通过回调处理
+    private static final int MAX_IN_FLIGHT = 16; // 异步发送时每台设备最多未确认的消息数，达到后等待确认
+    private static final int SEND_RETRIES = 3; // 异步发送失败后最多重试的次数，仍失败则丢弃
+    private static final long IN_FLIGHT_POLL_MS = 10; // 等待未确认配额时检查重试队列的间隔
+    private static final long FLUSH_TIMEOUT_MS = 5000; // 停止时等待未确认消息的最长时间
+    private static final boolean SPOOL_ENABLED = false; // 磁盘缓冲：broker 不可用或发送超时时日志写入本地磁盘，恢复后由后台线程按顺序补发
+    private static final String SPOOL_DIR = "spool"; // 磁盘缓冲的目录
+    private static final long SPOOL_MAX_BYTES = 256L << 20; // 磁盘缓冲的最大字节数，超过后丢弃最旧的日志
+    private static final long SPOOL_SEGMENT_BYTES = 16L << 20; // 磁盘缓冲每个段文件的大小
+    private static final int SEND_TIMEOUT_MS = 1000; // 磁盘缓冲模式下每次发送等待 broker 确认的最长时间，超时则写入磁盘缓冲
     private static final String[] LOG_LEVELS = {
             "INFO", "INFO", "INFO", "INFO", "INFO", "INFO", "INFO", "INFO", "INFO", // 提高 INFO 出现频率
             "WARN", "WARN",                //  WARN 出现频率
@@ -23,65 +57,132 @@ public class LogProducer {
             "磁盘空间不足",
             "数据库连接失败"
     }; // 日志内容示例
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     private final int deviceId; // 当前设备ID
+    private final int intervalMillis; // 每隔多少ms生成一条日志
+    private final ProducerChannel channel; // 发送日志使用的连接，可能与其他设备共享
+    private final boolean ownsChannel; // 连接是否为本设备独占，独占时停止后关闭
+    private final TokenBucket rateLimiter; // 按间隔 T 控制本设备的发送速率，不受发送耗时影响
+    private final TokenBucket globalRateLimiter; // 全部设备共享的限速，可能为 null
+    private final DiskSpool spool; // 全部设备共享的磁盘缓冲，null 表示不启用
     private final Random random = new Random();
-
-    private Connection connection;
-    private Session session;
-    private MessageProducer producer;
+    private final List<LogMessage> batch = new ArrayList<>(); // 尚未发送的批量日志
+    private long batchStartTime; // 当前批次第一条日志的生成时间
+    private volatile boolean running = true; // stop() 后在下一条日志前退出
+    private final AtomicLong sentCount = new AtomicLong(); // 已发送的日志条数（异步发送时为 broker 已确认的条数）
+    private final AtomicLong failedCount = new AtomicLong(); // 发送失败的次数（含之后重试成功的）
+    private final AtomicLong droppedCount = new AtomicLong(); // 重试后仍失败（或写入磁盘缓冲失败）而丢弃的日志条数
+    private final AtomicLong spooledCount = new AtomicLong(); // 写入磁盘缓冲的日志条数
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT); // 异步发送时未确认消息的配额
+    private final ConcurrentLinkedQueue<PendingSend> retryQueue = new ConcurrentLinkedQueue<>(); // 等待重试的消息，由本设备线程重新发送
+    private volatile boolean faulty = false; // 故障模拟：只生成 ERROR 日志（压测中用于触发告警）
 
     public LogProducer(int deviceId) throws JMSException {
-        this.deviceId = deviceId;
-        initialize();
+        this(BROKER_URL, deviceId, T);
+    }
+
+    // 连接到指定 broker、按指定间隔生成日志的设备（压测使用嵌入式 broker 和不同的发送速率）
+    public LogProducer(String brokerUrl, int deviceId, int intervalMillis) throws JMSException {
+        this(deviceId, intervalMillis, new ProducerChannel(brokerUrl, QUEUE_NAME), true, null, null);
+    }
+
+    // 使用共享连接的设备（大规模模拟模式），globalRateLimiter 为 null 时不做全局限速
+    public LogProducer(int deviceId, int intervalMillis, ProducerChannel channel, TokenBucket globalRateLimiter) {
+        this(deviceId, intervalMillis, channel, false, globalRateLimiter, null);
+    }
+
+    // 使用磁盘缓冲的设备：channel 应为可重连的连接（ProducerChannel.reconnecting），断开后由 spool 的补发线程重新连接
+    public LogProducer(int deviceId, int intervalMillis, ProducerChannel channel, TokenBucket globalRateLimiter, DiskSpool spool) {
+        this(deviceId, intervalMillis, channel, false, globalRateLimiter, spool);
     }
 
-    // 初始化连接、会话和生产者
-    private void initialize() throws JMSException {
-        ConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URL);
-        connection = factory.createConnection();
-        connection.start();
-        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        Destination destination = session.createQueue(QUEUE_NAME);
-        producer = session.createProducer(destination);
-        producer.setDeliveryMode(jakarta.jms.DeliveryMode.NON_PERSISTENT); // 非持久化消息
+    private LogProducer(int deviceId, int intervalMillis, ProducerChannel channel, boolean ownsChannel, TokenBucket globalRateLimiter,
+                        DiskSpool spool) {
+        this.deviceId = deviceId;
+        this.intervalMillis = intervalMillis;
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.rateLimiter = new TokenBucket(1000.0 / intervalMillis, 1);
+        this.globalRateLimiter = globalRateLimiter;
+        this.spool = spool;
+        if (spool != null) {
+            spool.register(channel);
+        }
     }
 
-    // 关闭资源
+    // 关闭资源（共享的连接由创建者关闭）
     public void close() throws JMSException {
-        if (connection != null) {
-            connection.close();
+        if (ownsChannel) {
+            channel.close();
         }
     }
 
+    // 停止生成日志，startProducing() 在当前间隔结束后返回并关闭连接
+    public void stop() {
+        running = false;
+    }
+
+    public void setFaulty(boolean faulty) {
+        this.faulty = faulty;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
     // 模拟日志生成并发送
     public void startProducing() {
         try {
-            System.out.println("设备 " + deviceId + " 开始生成日志...");
+            if (VERBOSE) {
+                System.out.println("设备 " + deviceId + " 开始生成日志...");
+            }
+
+            while (running) {
+                // 按间隔 T 取得发送配额，全局限速时再取得全局配额
+                acquire(rateLimiter);
+                if (globalRateLimiter != null) {
+                    acquire(globalRateLimiter);
+                }
+                retryFailedSends();
 
-            while (true) {
                 // 随机生成日志消息
-                String logLevel = LOG_LEVELS[random.nextInt(LOG_LEVELS.length)];
+                String logLevel = faulty ? "ERROR" : LOG_LEVELS[random.nextInt(LOG_LEVELS.length)];
                 String logMessageContent = LOG_MESSAGES[random.nextInt(LOG_MESSAGES.length)];
-                String logTimestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                String logTimestamp = LocalDateTime.now().format(TIMESTAMP_FORMATTER);
 
                 // 创建日志消息对象
                 LogMessage logMessageObj = new LogMessage(deviceId, logTimestamp, logLevel, logMessageContent);
                 // LogMessage logMessageObj = new LogMessage(deviceId, logTimestamp, "ERROR", logMessageContent);
 
-                // 转换为JSON字符串
-                String jsonMessage = logMessageObj.toJson();
-
-                // 创建文本消息
-                TextMessage message = session.createTextMessage(jsonMessage);
-
-                // 发送消息
-                producer.send(message);
-                System.out.println("设备 " + deviceId + " 发送日志: " + jsonMessage);
-
-                // 每隔T毫秒生成一条日志
-                Thread.sleep(T);
+                if (BATCH_SIZE > 1) {
+                    // 批量模式：攒满 K 条，或预计下一条日志到来时第一条日志已等待超过 M 毫秒（此时继续等待没有意义），则整批发送；
+                    // 等待配额的时间比预计的长（如全局限速）时，由 acquire 在 M 毫秒到期时发送
+                    if (batch.isEmpty()) {
+                        batchStartTime = System.currentTimeMillis();
+                    }
+                    batch.add(logMessageObj);
+                    if (batch.size() >= BATCH_SIZE || System.currentTimeMillis() + intervalMillis - batchStartTime > BATCH_LINGER_MS) {
+                        sendBatch();
+                    }
+                } else {
+                    sendLog(logMessageObj);
+                }
             }
+            sendBatch(); // 停止前发送尚未攒满的批次
+            awaitInFlight();
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -93,13 +194,330 @@ public class LogProducer {
         }
     }
 
-    public static void main(String[] args) {
+    // 取得 bucket 的一个配额；批量模式下等待期间当前批次的第一条日志等满 BATCH_LINGER_MS 时，先发送该批次
+    private void acquire(TokenBucket bucket) throws JMSException, InterruptedException {
+        long waitNanos = bucket.reserve();
+        if (waitNanos > 0 && !batch.isEmpty()) {
+            long lingerNanos = TimeUnit.MILLISECONDS.toNanos(batchStartTime + BATCH_LINGER_MS - System.currentTimeMillis());
+            if (lingerNanos < waitNanos) {
+                long start = System.nanoTime();
+                if (lingerNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(lingerNanos);
+                }
+                sendBatch();
+                waitNanos -= System.nanoTime() - start;
+            }
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // 逐条发送一条日志
+    private void sendLog(LogMessage logMessageObj) throws JMSException, InterruptedException {
+        // 转换为JSON字符串
+        String jsonMessage = logMessageObj.toJson();
+        long sendTime = currentTimeMicros(); // 重试时保留首次发送的时间，到达延迟包含重试耗时
+
+        // 创建消息（JSON 文本或二进制），并附带设备ID属性供分析器按设备分区消费，然后发送
+        send(session -> {
+            Message message = BINARY_WIRE_FORMAT
+                    ? BinaryCodec.createLogMessage(session, logMessageObj)
+                    : session.createTextMessage(jsonMessage);
+            message.setIntProperty("device_id", deviceId);
+            message.setLongProperty(SEND_TIME_PROPERTY, sendTime);
+            return message;
+        }, List.of(logMessageObj), sendTime);
+        if (VERBOSE) {
+            System.out.println("设备 " + deviceId + " 发送日志: " + jsonMessage);
+        }
+    }
+
+    // 将当前批次的日志打包成一个信封消息发送
+    private void sendBatch() throws JMSException, InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<LogMessage> logs = new ArrayList<>(batch); // 异步发送失败重试时 batch 已被清空
+        long sendTime = currentTimeMicros();
+        send(session -> createBatchMessage(session, deviceId, sendTime, logs), logs, sendTime);
+        if (VERBOSE) {
+            System.out.println("设备 " + deviceId + " 发送批量日志: " + batch.size() + " 条");
+        }
+        batch.clear();
+    }
+
+    // 批量信封消息（带 batch_size 属性），磁盘缓冲补发时也使用该格式
+    static Message createBatchMessage(Session session, int deviceId, long sendTime, List<LogMessage> logs) throws JMSException {
+        Message message = BINARY_WIRE_FORMAT
+                ? BinaryCodec.createLogBatch(session, logs)
+                : session.createTextMessage(JsonCodec.writeLogBatch(logs));
+        message.setIntProperty("device_id", deviceId);
+        message.setIntProperty("batch_size", logs.size());
+        message.setLongProperty(SEND_TIME_PROPERTY, sendTime);
+        return message;
+    }
+
+    // 发送一条包含 logs 的消息：同步发送时等待 send 返回；
+    // 异步发送时最多 MAX_IN_FLIGHT 条未确认，broker 确认后才计入已发送，broker 延迟升高时设备仍可按间隔继续生成；
+    // 失败的消息在下一条新消息之前重发，但失败时已发出的后续消息会先于重发的消息到达，异步发送加重试不保证同一设备内的顺序
+    // 启用磁盘缓冲时：缓冲中还有未补发的日志、连接已断开、发送失败或超时、异步发送的未确认配额用完，都改为写入磁盘缓冲，设备线程不等待 broker
+    private void send(ProducerChannel.MessageFactory factory, List<LogMessage> logs, long sendTime) throws JMSException, InterruptedException {
+        if (spool != null) {
+            List<DiskSpool.HeldBatch> heldBack = spool.takeHeldBack(deviceId);
+            if (heldBack != null) {
+                // 最后一轮补发期间暂存的日志先于本次的日志发送（暂存时已计入 spooledCount）
+                for (DiskSpool.HeldBatch held : heldBack) {
+                    spooledCount.addAndGet(-held.logs.size());
+                    send(session -> createBatchMessage(session, deviceId, held.sendTimeMicros, held.logs), held.logs, held.sendTimeMicros);
+                }
+            }
+            if (channel.isBroken()) {
+                spool(logs, sendTime);
+                return;
+            }
+            if (spool.isBacklogged() && spoolIfBacklogged(logs, sendTime)) {
+                return;
+            }
+        }
+        if (!ASYNC_SEND) {
+            try {
+                channel.send(factory);
+            } catch (JMSException e) {
+                if (spool == null) {
+                    throw e;
+                }
+                failedCount.incrementAndGet();
+                spool(logs, sendTime);
+                return;
+            }
+            sentCount.addAndGet(logs.size());
+            return;
+        }
+        if (spool == null) {
+            // 失败等待重试的消息仍占用配额，等待期间必须继续重发，否则配额全部在重试队列中时会一直等待
+            while (!inFlight.tryAcquire(IN_FLIGHT_POLL_MS, TimeUnit.MILLISECONDS)) {
+                retryFailedSends();
+            }
+        } else if (!inFlight.tryAcquire()) {
+            spool(logs, sendTime);
+            return;
+        }
+        retryFailedSends(); // 先重发失败的消息，再发送新的消息
+        sendAsync(new PendingSend(factory, logs, sendTime));
+    }
+
+    // 写入磁盘缓冲，写入失败（如磁盘已满）时丢弃
+    private void spool(List<LogMessage> logs, long sendTime) {
+        try {
+            spool.append(deviceId, sendTime, logs);
+            spooledCount.addAndGet(logs.size());
+        } catch (IOException e) {
+            spoolFailed(logs, e);
+        }
+    }
+
+    // 缓冲中仍有未补发的日志时写入磁盘缓冲或暂存（保证顺序），返回 false 表示应直接发送
+    private boolean spoolIfBacklogged(List<LogMessage> logs, long sendTime) {
+        try {
+            if (!spool.appendIfBacklogged(deviceId, sendTime, logs)) {
+                return false;
+            }
+            spooledCount.addAndGet(logs.size());
+        } catch (IOException e) {
+            spoolFailed(logs, e);
+        }
+        return true;
+    }
+
+    private void spoolFailed(List<LogMessage> logs, IOException e) {
+        droppedCount.addAndGet(logs.size());
+        System.out.println("设备 " + deviceId + " 写入磁盘缓冲失败，丢弃 " + logs.size() + " 条日志: " + e.getMessage());
+    }
+
+    private void sendAsync(PendingSend pending) {
+        try {
+            channel.sendAsync(pending.factory, new AsyncCallback() {
+                @Override
+                public void onSuccess() {
+                    sentCount.addAndGet(pending.logs.size());
+                    inFlight.release();
+                }
+
+                @Override
+                public void onException(JMSException e) {
+                    sendFailed(pending, e);
+                }
+            });
+        } catch (JMSException e) {
+            sendFailed(pending, e);
+        }
+    }
+
+    // 发送失败：交给设备线程重试（不在传输线程中直接重发），超过重试次数则丢弃并释放配额
+    // 启用磁盘缓冲时不重试，直接写入磁盘缓冲由补发线程补发
+    private void sendFailed(PendingSend pending, JMSException e) {
+        failedCount.incrementAndGet();
+        if (spool != null) {
+            inFlight.release();
+            spool(pending.logs, pending.sendTime);
+            return;
+        }
+        if (++pending.attempts <= SEND_RETRIES) {
+            retryQueue.offer(pending);
+            return;
+        }
+        droppedCount.addAndGet(pending.logs.size());
+        inFlight.release();
+        System.out.println("设备 " + deviceId + " 发送失败，重试 " + SEND_RETRIES + " 次后丢弃 " + pending.logs.size() + " 条日志: " + e.getMessage());
+    }
+
+    // 重新发送失败的消息（由设备线程调用，已持有配额）
+    private void retryFailedSends() {
+        PendingSend pending;
+        while ((pending = retryQueue.poll()) != null) {
+            sendAsync(pending);
+        }
+    }
+
+    // 停止前等待未确认的消息，期间继续重试失败的消息，最多等待 FLUSH_TIMEOUT_MS
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+        while (inFlight.availablePermits() < MAX_IN_FLIGHT && System.currentTimeMillis() < deadline) {
+            retryFailedSends();
+            Thread.sleep(10);
+        }
+    }
+
+    // 异步发送中的一条消息，重试时用 factory 重新创建，写入磁盘缓冲时使用 logs 和 sendTime
+    private static class PendingSend {
+        final ProducerChannel.MessageFactory factory;
+        final List<LogMessage> logs; // 消息中的日志
+        final long sendTime; // 首次发送的时间（epoch 微秒）
+        int attempts = 0; // 已失败的次数
+
+        PendingSend(ProducerChannel.MessageFactory factory, List<LogMessage> logs, long sendTime) {
+            this.factory = factory;
+            this.logs = logs;
+            this.sendTime = sendTime;
+        }
+    }
+
+    // 当前时间的 epoch 微秒（JMS 自带的 JMSTimestamp 只有毫秒精度）
+    private static long currentTimeMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+    // 大规模模拟：每台设备一个虚拟线程，共享少量连接，定期输出发送汇总
+    private static void startSharedProducers(DiskSpool spool) throws JMSException {
+        ProducerChannel[] channels = new ProducerChannel[CONNECTION_POOL_SIZE];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = spool != null
+                    ? ProducerChannel.reconnecting(BROKER_URL, QUEUE_NAME, SEND_TIMEOUT_MS)
+                    : new ProducerChannel(BROKER_URL, QUEUE_NAME);
+        }
+        TokenBucket globalRateLimiter = GLOBAL_RATE > 0 ? new TokenBucket(GLOBAL_RATE, Math.max(1, GLOBAL_RATE / 10)) : null;
+
+        List<LogProducer> producers = new ArrayList<>(N);
+        ExecutorService devices = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 1; i <= N; i++) {
+            LogProducer producer = new LogProducer(i, T, channels[i % channels.length], globalRateLimiter, spool);
+            producers.add(producer);
+            devices.submit(producer::startProducing);
+        }
+        if (spool != null) {
+            closeOnShutdown(spool, producers, devices, List.of(channels));
+        }
+        System.out.println(N + " 台设备已启动，共享 " + channels.length + " 个连接"
+                + (GLOBAL_RATE > 0 ? "，全局限速 " + GLOBAL_RATE + " 条/秒" : ""));
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long[] lastSent = new long[1];
+        reporter.scheduleAtFixedRate(() -> {
+            long sent = 0;
+            long failed = 0;
+            long dropped = 0;
+            for (LogProducer producer : producers) {
+                sent += producer.getSentCount();
+                failed += producer.getFailedCount();
+                dropped += producer.getDroppedCount();
+            }
+            System.out.println("已发送 " + sent + " 条日志，最近 " + REPORT_INTERVAL_SECONDS + " 秒 "
+                    + (sent - lastSent[0]) / REPORT_INTERVAL_SECONDS + " 条/秒，发送失败 " + failed + " 次，丢弃 " + dropped + " 条"
+                    + (spool != null ? "；磁盘缓冲写入 " + spool.getSpooledCount() + " 条，已补发 " + spool.getDrainedCount()
+                    + " 条，缓冲满丢弃 " + spool.getDroppedCount() + " 条，占用 " + spool.getSize() / 1024 + " KB" : ""));
+            lastSent[0] = sent;
+        }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // 打开磁盘缓冲并启动补发线程（使用独立的可重连连接），退出时由 closeOnShutdown 保存补发进度；未启用时返回 null
+    private static DiskSpool openSpool() throws IOException {
+        if (!SPOOL_ENABLED) {
+            return null;
+        }
+        DiskSpool spool = new DiskSpool(Paths.get(SPOOL_DIR), SPOOL_MAX_BYTES, SPOOL_SEGMENT_BYTES);
+        spool.startDraining(ProducerChannel.reconnecting(BROKER_URL, QUEUE_NAME, SEND_TIMEOUT_MS), LogProducer::createBatchMessage);
+        return spool;
+    }
+
+    // 启用磁盘缓冲的设备：每台设备一个可重连的连接，broker 不可用也能启动，日志先写入磁盘缓冲
+    private static void startSpoolingProducers(DiskSpool spool) {
+        List<ProducerChannel> channels = new ArrayList<>(N);
+        List<LogProducer> producers = new ArrayList<>(N);
+        ExecutorService devices = Executors.newFixedThreadPool(N);
+        for (int i = 1; i <= N; i++) {
+            ProducerChannel channel = ProducerChannel.reconnecting(BROKER_URL, QUEUE_NAME, SEND_TIMEOUT_MS);
+            LogProducer producer = new LogProducer(i, T, channel, null, spool);
+            channels.add(channel);
+            producers.add(producer);
+            devices.submit(producer::startProducing);
+        }
+        closeOnShutdown(spool, producers, devices, channels);
+    }
+
+    // 启用磁盘缓冲时的退出处理：停止设备并等待其发送完（或写入缓冲）当前的日志，再关闭缓冲并保存补发进度，
+    // 最后关闭设备使用的连接（这些连接由多台设备共享或交给缓冲重新连接，设备停止时不会关闭）
+    private static void closeOnShutdown(DiskSpool spool, List<LogProducer> producers, ExecutorService devices, List<ProducerChannel> channels) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                for (LogProducer producer : producers) {
+                    producer.stop();
+                }
+                devices.shutdown();
+                devices.awaitTermination(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                spool.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            for (ProducerChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }));
+    }
+
+    public static void main(String[] args) throws JMSException, IOException {
+        DiskSpool spool = openSpool();
+        if (SHARED_CONNECTIONS) {
+            startSharedProducers(spool);
+            return;
+        }
+        if (spool != null) {
+            startSpoolingProducers(spool);
+            return;
+        }
+
         // 启动多个日志采集节点（用不同设备ID模拟）
         for (int i = 1; i <= N; i++) {
             int deviceId = i;
             new Thread(() -> {
                 try {
-                    new LogProducer(deviceId).startProducing();
+                    LogProducer producer = new LogProducer(deviceId);
+                    producer.startProducing();
                 } catch (JMSException e) {
                     e.printStackTrace();
                 }
@@ -0,0 +1,140 @@
+package com.logproducer;
+
+import jakarta.jms.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQMessageProducer;
+import org.apache.activemq.AsyncCallback;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// 一个 JMS 连接、会话和生产者；可以被多个设备线程共享
+// JMS 会话不能被多个线程同时使用，创建和发送消息在锁内完成（ReentrantLock 不会让虚拟线程占住载体线程）
+public class ProducerChannel {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final String brokerUrl;
+    private final String queueName;
+    private final int sendTimeoutMillis; // 大于 0 时每次发送等待 broker 确认，超过该时间抛出异常
+    private volatile Connection connection;
+    private Session session;
+    private ActiveMQMessageProducer producer;
+    private volatile boolean broken = false; // 连接已断开，需要 reconnect()
+
+    // 由会话创建要发送的消息
+    public interface MessageFactory {
+        Message create(Session session) throws JMSException;
+    }
+
+    public ProducerChannel(String brokerUrl, String queueName) throws JMSException {
+        this(brokerUrl, queueName, 0);
+        connect();
+    }
+
+    private ProducerChannel(String brokerUrl, String queueName, int sendTimeoutMillis) {
+        this.brokerUrl = brokerUrl;
+        this.queueName = queueName;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+    }
+
+    // 可重连的连接（磁盘缓冲模式使用）：broker 不可用时不抛出异常而是标记为断开，之后由 reconnect() 重新连接；
+    // 每次发送都等待 broker 确认，最多等待 sendTimeoutMillis，broker 变慢时发送方可以及时转存而不是一直阻塞
+    public static ProducerChannel reconnecting(String brokerUrl, String queueName, int sendTimeoutMillis) {
+        ProducerChannel channel = new ProducerChannel(brokerUrl, queueName, sendTimeoutMillis);
+        try {
+            channel.connect();
+        } catch (JMSException e) {
+            channel.broken = true;
+            System.out.println("连接 broker 失败，稍后重试: " + e.getMessage());
+        }
+        return channel;
+    }
+
+    private void connect() throws JMSException {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerUrl);
+        if (sendTimeoutMillis > 0) {
+            factory.setSendTimeout(sendTimeoutMillis); // 非持久化消息也同步发送，超时抛出异常
+        }
+        Connection newConnection = factory.createConnection();
+        try {
+            // 传输层断开时标记，之后的发送立即失败（重新连接后旧连接迟到的通知不影响新连接）
+            newConnection.setExceptionListener(e -> {
+                if (connection == newConnection) {
+                    broken = true;
+                }
+            });
+            newConnection.start();
+            Session newSession = newConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination destination = newSession.createQueue(queueName);
+            ActiveMQMessageProducer newProducer = (ActiveMQMessageProducer) newSession.createProducer(destination);
+            newProducer.setDeliveryMode(DeliveryMode.NON_PERSISTENT); // 非持久化消息
+            lock.lock();
+            try {
+                connection = newConnection;
+                session = newSession;
+                producer = newProducer;
+            } finally {
+                lock.unlock();
+            }
+        } catch (JMSException e) {
+            closeQuietly(newConnection);
+            throw e;
+        }
+    }
+
+    // 关闭已断开的连接并重新连接，broker 仍不可用时抛出异常
+    public void reconnect() throws JMSException {
+        Connection oldConnection = connection;
+        connect();
+        broken = false;
+        closeQuietly(oldConnection);
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    // 创建并发送一条消息
+    public void send(MessageFactory factory) throws JMSException {
+        checkConnected();
+        lock.lock();
+        try {
+            producer.send(factory.create(session));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 创建并异步发送一条消息，broker 确认或失败后在连接的传输线程中回调 callback
+    // JMS 2.0 的 send(Message, CompletionListener) 在 ActiveMQ 6.1 中尚未实现，这里使用 ActiveMQ 自带的 AsyncCallback
+    public void sendAsync(MessageFactory factory, AsyncCallback callback) throws JMSException {
+        checkConnected();
+        lock.lock();
+        try {
+            producer.send(factory.create(session), callback);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkConnected() throws JMSException {
+        if (broken) {
+            throw new JMSException("与 broker 的连接已断开");
+        }
+    }
+
+    public void close() throws JMSException {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (JMSException e) {
+            // 连接已断开，忽略
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.logproducer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+// 采集器正在跟踪的一个日志文件：打开的 FileChannel、文件标识、读取位置和尚未发送的日志
+// 文件被轮转（重命名后在原路径创建新文件）时，已打开的 channel 仍指向旧文件，读完旧文件剩余内容后再切换到新文件
+public class TailedFile {
+    private final Path path;
+    private final int deviceId;
+    private final List<LogMessage> batch = new ArrayList<>(); // 已读取、尚未发送的日志
+    private FileChannel channel;
+    private String fileKey; // 打开的文件的标识（Linux 上为设备号和 inode），用于识别轮转
+    private long position; // 下一次读取的位置（之前的完整行已读取）
+
+    public TailedFile(Path path, int deviceId) {
+        this.path = path;
+        this.deviceId = deviceId;
+    }
+
+    // 打开文件并从 position 开始读取
+    public void open(long position) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileKey = fileKey(path);
+        this.position = position;
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // 文件标识，文件系统不提供时用路径代替（此时只能通过文件变小识别轮转）
+    public static String fileKey(Path path) throws IOException {
+        Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        return key != null ? key.toString() : path.toString();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public List<LogMessage> getBatch() {
+        return batch;
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+}
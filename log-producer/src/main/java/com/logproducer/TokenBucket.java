@@ -0,0 +1,46 @@
+package com.logproducer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 令牌桶限速：每秒补充 ratePerSecond 个令牌，最多积累 burst 个
+// acquire() 预占一个令牌，令牌不足时按欠下的数量计算等待时间后在锁外休眠，多个线程共享时按到达顺序均匀放行
+public class TokenBucket {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens; // 当前令牌数，为负表示已被等待中的线程预占
+    private long lastRefillNanos;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Invalid token bucket: rate=" + ratePerSecond + ", burst=" + burst);
+        }
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    // 取得一个令牌，必要时阻塞等待
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // 预占一个令牌但不等待，返回调用方还需等待的纳秒数（0 表示可立即使用），等待期间调用方可以先做其他事情
+    public long reserve() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        } finally {
+            lock.unlock();
+        }
+    }
+}